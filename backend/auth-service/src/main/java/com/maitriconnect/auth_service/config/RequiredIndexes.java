@@ -0,0 +1,60 @@
+package com.maitriconnect.auth_service.config;
+
+import com.maitriconnect.auth_service.model.User;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.util.List;
+
+// Every index the service relies on, with the repository methods and queries it serves. This is the
+// single source of truth: MongoIndexManager ensures these at startup (Spring Boot's automatic index
+// creation is off), and the explain() tests check each listed query against them.
+public final class RequiredIndexes {
+
+    public record RequiredIndex(Class<?> entity, String name, Document keys, boolean unique, boolean sparse,
+                                List<String> usedBy) {
+
+        public Index toDefinition() {
+            CompoundIndexDefinition definition = new CompoundIndexDefinition(keys);
+            definition.named(name);
+            if (unique) {
+                definition.unique();
+            }
+            if (sparse) {
+                definition.sparse();
+            }
+            return definition;
+        }
+    }
+
+    public static final List<RequiredIndex> ALL = List.of(
+        // Same names @Indexed on User used to create, so existing deployments keep their indexes
+        unique(User.class, "username", new Document("username", 1), false,
+            "UserRepository.findByUsername", "UserRepository.existsByUsername",
+            "UserRepository.findByUsernameOrNameContaining (username branch)"),
+        unique(User.class, "email", new Document("email", 1), false,
+            "UserRepository.findByEmail", "UserRepository.existsByEmail"),
+        // The name search is an unanchored case-insensitive regex, so these are scanned in full; still
+        // far smaller than the documents
+        index(User.class, "first_name", new Document("firstName", 1),
+            "UserRepository.findByUsernameOrNameContaining (firstName branch)"),
+        index(User.class, "last_name", new Document("lastName", 1),
+            "UserRepository.findByUsernameOrNameContaining (lastName branch)"),
+        index(User.class, "active", new Document("active", 1),
+            "UserRepository.findByActiveTrue"),
+        index(User.class, "online", new Document("online", 1),
+            "UserRepository.findByOnlineTrue")
+    );
+
+    private RequiredIndexes() {
+    }
+
+    private static RequiredIndex index(Class<?> entity, String name, Document keys, String... usedBy) {
+        return new RequiredIndex(entity, name, keys, false, false, List.of(usedBy));
+    }
+
+    private static RequiredIndex unique(Class<?> entity, String name, Document keys, boolean sparse, String... usedBy) {
+        return new RequiredIndex(entity, name, keys, true, sparse, List.of(usedBy));
+    }
+}
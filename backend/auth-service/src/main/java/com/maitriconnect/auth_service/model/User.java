@@ -6,7 +6,6 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
-import org.springframework.data.mongodb.core.index.Indexed;
 import java.time.LocalDateTime;
 
 @Document(collection = "users")
@@ -15,10 +14,9 @@ public class User {
     @Id
     private String id;
     
-    @Indexed(unique = true)
+    // Unique indexes on username and email are declared in RequiredIndexes
     private String username;
     
-    @Indexed(unique = true)
     private String email;
     
     private String password;
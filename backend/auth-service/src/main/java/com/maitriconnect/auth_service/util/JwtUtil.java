@@ -2,11 +2,19 @@ package com.maitriconnect.auth_service.util;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class JwtUtil {
@@ -17,8 +25,19 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private Long expiration;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    // Verified tokens are remembered (by SHA-256 of the token) until they expire, so a client reusing
+    // its bearer token skips signature verification; 0 disables the cache
+    @Value("${jwt.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    private SecretKey signingKey;
+    private JwtParser parser;
+    private final Map<String, VerifiedToken> verified = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
     }
 
     public String generateToken(String username, String userId) {
@@ -27,32 +46,87 @@ public class JwtUtil {
                 .claim("userId", userId)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
+    // Parses and verifies the token at most once per cache lifetime; null when it is invalid or expired
+    public VerifiedToken verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        String cacheKey = cacheMaxEntries > 0 ? hash(token) : null;
+        if (cacheKey != null) {
+            VerifiedToken cached = verified.get(cacheKey);
+            if (cached != null) {
+                if (cached.isValidAt(now)) {
+                    return cached;
+                }
+                verified.remove(cacheKey, cached);
+            }
+        }
+
+        VerifiedToken result;
+        try {
+            result = VerifiedToken.of(parser.parseClaimsJws(token).getBody());
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+
+        if (cacheKey != null) {
+            if (verified.size() >= cacheMaxEntries) {
+                evict(now);
+            }
+            verified.put(cacheKey, result);
+        }
+        return result;
+    }
+
     public String extractUsername(String token) {
-        return extractAllClaims(token).getSubject();
+        VerifiedToken result = verify(token);
+        return result != null ? result.username() : null;
     }
 
     public String extractUserId(String token) {
-        return extractAllClaims(token).get("userId", String.class);
+        VerifiedToken result = verify(token);
+        return result != null ? result.userId() : null;
     }
 
     public boolean validateToken(String token) {
+        return verify(token) != null;
+    }
+
+    // Drop expired entries first; if the cache is still full, drop arbitrary ones to stay bounded
+    private void evict(long now) {
+        verified.values().removeIf(entry -> !entry.isValidAt(now));
+        Iterator<String> keys = verified.keySet().iterator();
+        while (verified.size() >= cacheMaxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static String hash(String token) {
         try {
-            extractAllClaims(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    // The parts of a verified token callers need; immutable so it can be shared from the cache
+    public record VerifiedToken(String username, String userId, long expiresAtMillis) {
+
+        static VerifiedToken of(Claims claims) {
+            Date expiration = claims.getExpiration();
+            return new VerifiedToken(claims.getSubject(), claims.get("userId", String.class),
+                expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+        }
+
+        boolean isValidAt(long nowMillis) {
+            return nowMillis < expiresAtMillis;
+        }
     }
-}
\ No newline at end of file
+}
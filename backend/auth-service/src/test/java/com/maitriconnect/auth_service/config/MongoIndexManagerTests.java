@@ -0,0 +1,70 @@
+package com.maitriconnect.auth_service.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MongoIndexManagerTests {
+
+	private IndexOperations indexOps;
+	private MongoIndexManager manager;
+
+	@BeforeEach
+	void setUp() {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		indexOps = mock(IndexOperations.class);
+		when(mongoTemplate.indexOps(any(Class.class))).thenReturn(indexOps);
+		when(mongoTemplate.getCollectionName(any())).thenReturn("collection");
+		manager = new MongoIndexManager();
+		ReflectionTestUtils.setField(manager, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(manager, "requireUnique", true);
+	}
+
+	@Test
+	void createsEveryDeclaredIndex() {
+		manager.ensureIndexes();
+
+		verify(indexOps, times(RequiredIndexes.ALL.size())).createIndex(any(IndexDefinition.class));
+	}
+
+	@Test
+	void failsWhenAUniqueIndexCannotBeCreated() {
+		when(indexOps.createIndex(any(IndexDefinition.class))).thenAnswer(invocation -> {
+			if (isUnique(invocation.getArgument(0))) {
+				throw new DataIntegrityViolationException("E11000 duplicate key");
+			}
+			return "created";
+		});
+
+		assertThrows(IllegalStateException.class, manager::ensureIndexes);
+	}
+
+	@Test
+	void onlyLogsWhenAnOrdinaryIndexCannotBeCreated() {
+		when(indexOps.createIndex(any(IndexDefinition.class))).thenAnswer(invocation -> {
+			if (!isUnique(invocation.getArgument(0))) {
+				throw new DataIntegrityViolationException("index build failed");
+			}
+			return "created";
+		});
+
+		assertDoesNotThrow(manager::ensureIndexes);
+	}
+
+	private static boolean isUnique(Index index) {
+		return Boolean.TRUE.equals(index.getIndexOptions().get("unique"));
+	}
+}
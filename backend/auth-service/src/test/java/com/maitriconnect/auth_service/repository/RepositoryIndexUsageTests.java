@@ -0,0 +1,166 @@
+package com.maitriconnect.auth_service.repository;
+
+import com.maitriconnect.auth_service.config.MongoIndexManager;
+import com.maitriconnect.auth_service.model.User;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Runs every UserRepository query against an in-process MongoDB with the declared indexes and checks
+// the winning plan of each one with explain(): a COLLSCAN means a query lost its index.
+// -Dmongo.test.address=host:port points the tests at a running MongoDB; otherwise the binary is
+// downloaded on first use. Without either they are skipped, or fail with -Dindex-tests.required=true.
+@DataMongoTest
+@Import(MongoIndexManager.class)
+class RepositoryIndexUsageTests {
+
+	private static TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+	private static String mongoAddress;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private MongoIndexManager indexManager;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	// Runs before the Spring context is created, so the context only starts when MongoDB did
+	@BeforeAll
+	static void startMongo() {
+		mongoAddress = System.getProperty("mongo.test.address");
+		if (mongoAddress != null) {
+			return;
+		}
+		String failure = null;
+		try {
+			mongod = Mongod.instance().start(Version.Main.V7_0);
+			mongoAddress = mongod.current().getServerAddress().toString();
+		} catch (RuntimeException e) {
+			failure = e.getMessage();
+		}
+		String reason = "Embedded MongoDB unavailable: " + failure;
+		if (mongod == null && Boolean.getBoolean("index-tests.required")) {
+			fail(reason);
+		}
+		assumeTrue(mongod != null, reason);
+	}
+
+	@AfterAll
+	static void stopMongo() {
+		if (mongod != null) {
+			mongod.close();
+			mongod = null;
+		}
+	}
+
+	@DynamicPropertySource
+	static void mongoProperties(DynamicPropertyRegistry registry) {
+		registry.add("spring.data.mongodb.uri", () -> "mongodb://" + mongoAddress + "/index_usage_test");
+		registry.add("mongo.indexes.require-unique", () -> "true");
+	}
+
+	@BeforeEach
+	void seed() {
+		mongoTemplate.getDb().drop();
+		indexManager.ensureIndexes();
+
+		for (int i = 0; i < 20; i++) {
+			User user = new User("user" + i, "user" + i + "@example.com", "hash", "First" + i, "Last" + i);
+			user.setOnline(i % 3 == 0);
+			user.setActive(i % 5 != 0);
+			mongoTemplate.insert(user);
+		}
+	}
+
+	@Test
+	void userQueriesUseIndexes() {
+		assertIndexed("users", () -> userRepository.findByUsername("user1"));
+		assertIndexed("users", () -> userRepository.findByEmail("user1@example.com"));
+		assertIndexed("users", () -> userRepository.existsByUsername("user1"));
+		assertIndexed("users", () -> userRepository.existsByEmail("user1@example.com"));
+		assertIndexed("users", () -> userRepository.findByUsernameOrNameContaining("ser1"));
+		assertIndexed("users", () -> userRepository.findByActiveTrue());
+		assertIndexed("users", () -> userRepository.findByOnlineTrue());
+	}
+
+	@Test
+	void reportFindsNothingMissing() {
+		assertTrue(indexManager.report().missing().isEmpty());
+	}
+
+	// Profiles the call, then explains every read it sent to the collection. Writes (the remove half
+	// of a derived delete) cannot be re-explained from the profile, so their recorded plan is checked.
+	private void assertIndexed(String collection, Runnable call) {
+		mongoTemplate.getDb().runCommand(new Document("profile", 0));
+		mongoTemplate.getDb().getCollection("system.profile").drop();
+		mongoTemplate.getDb().runCommand(new Document("profile", 2));
+		try {
+			call.run();
+		} finally {
+			mongoTemplate.getDb().runCommand(new Document("profile", 0));
+		}
+
+		String namespace = mongoTemplate.getDb().getName() + "." + collection;
+		List<Document> operations = mongoTemplate.getDb().getCollection("system.profile")
+			.find(new Document("ns", namespace).append("op", new Document("$in", List.of("query", "command", "remove"))))
+			.into(new ArrayList<>());
+		assertFalse(operations.isEmpty(), "no operation on " + namespace + " was profiled");
+
+		for (Document operation : operations) {
+			String planSummary = operation.getString("planSummary");
+			if ("remove".equals(operation.getString("op"))) {
+				assertFalse(planSummary == null || planSummary.contains("COLLSCAN"), "remove on " + collection + ": " + planSummary);
+				continue;
+			}
+			Document command = new Document(operation.get("command", Document.class));
+			command.keySet().removeIf(key -> key.startsWith("$") || key.equals("lsid"));
+			Document explain = mongoTemplate.getDb().runCommand(
+				new Document("explain", command).append("verbosity", "queryPlanner"));
+			List<Document> winningPlans = new ArrayList<>();
+			collectWinningPlans(explain, winningPlans);
+			if (winningPlans.isEmpty()) {
+				fail("explain returned no winning plan for " + command.toJson());
+			}
+			for (Document plan : winningPlans) {
+				assertFalse(plan.toJson().contains("\"COLLSCAN\""), "collection scan for " + command.toJson() + ": " + plan.toJson());
+			}
+		}
+	}
+
+	private static void collectWinningPlans(Object node, List<Document> plans) {
+		if (node instanceof Document document) {
+			for (Map.Entry<String, Object> entry : document.entrySet()) {
+				if ("winningPlan".equals(entry.getKey()) && entry.getValue() instanceof Document plan) {
+					plans.add(plan);
+				} else {
+					collectWinningPlans(entry.getValue(), plans);
+				}
+			}
+		} else if (node instanceof List<?> list) {
+			list.forEach(item -> collectWinningPlans(item, plans));
+		}
+	}
+}
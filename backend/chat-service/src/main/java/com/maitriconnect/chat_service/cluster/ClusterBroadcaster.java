@@ -0,0 +1,136 @@
+package com.maitriconnect.chat_service.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+// Cluster-wide replacement for SimpMessagingTemplate sends. Every message is delivered to the local
+// broker, and relayed through the transport only when another node has subscribers for it, so a
+// single node (or a room whose subscribers are all local) never pays for the relay.
+//
+// Payloads are serialized once: encode() a payload sent to several destinations and pass the result to
+// send/sendToUser, and the same bytes serve every destination, subscriber, relay and replay log entry.
+// Each node stamps room topic frames and logs them in its RoomReplayLog as it delivers them locally,
+// so reconnecting sessions can resume. Transient frames (typing) are delivered without a sequence and
+// never replayed.
+@Component
+public class ClusterBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterBroadcaster.class);
+
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room.";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ClusterTransport transport;
+    private final ClusterInterestRegistry interestRegistry;
+    private final ObjectMapper objectMapper;
+    private final RoomReplayLog replayLog;
+
+    public ClusterBroadcaster(SimpMessagingTemplate messagingTemplate, ClusterTransport transport,
+                              ClusterInterestRegistry interestRegistry, ObjectMapper objectMapper,
+                              RoomReplayLog replayLog) {
+        this.messagingTemplate = messagingTemplate;
+        this.transport = transport;
+        this.interestRegistry = interestRegistry;
+        this.objectMapper = objectMapper;
+        this.replayLog = replayLog;
+        transport.subscribe(this::onEnvelope);
+    }
+
+    // Null (after logging) when the payload cannot be serialized; send and sendToUser then do nothing
+    public EncodedPayload encode(Object payload) {
+        try {
+            return new EncodedPayload(objectMapper.writeValueAsBytes(payload));
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize {}", payload.getClass().getSimpleName(), e);
+            return null;
+        }
+    }
+
+    public void convertAndSend(String destination, Object payload) {
+        send(destination, encode(payload));
+    }
+
+    // For frames that are stale by the time a session reconnects
+    public void convertAndSendTransient(String destination, Object payload) {
+        send(destination, encode(payload), ClusterEnvelope.Kind.TRANSIENT_MESSAGE);
+    }
+
+    public void convertAndSendToUser(String user, String destination, Object payload) {
+        sendToUser(user, destination, encode(payload));
+    }
+
+    public void send(String destination, EncodedPayload payload) {
+        send(destination, payload, ClusterEnvelope.Kind.MESSAGE);
+    }
+
+    public void sendToUser(String user, String destination, EncodedPayload payload) {
+        if (payload == null) {
+            return;
+        }
+        // The local broker and remote nodes both resolve /user/{name}/... against their own sessions
+        String userDestination = "/user/" + StringUtils.replace(user, "/", "%2F") + destination;
+        deliver(userDestination, payload, ClusterEnvelope.Kind.MESSAGE);
+        String key = ClusterInterestRegistry.userKey(user);
+        if (interestRegistry.hasRemoteInterest(key)) {
+            relay(ClusterEnvelope.Kind.MESSAGE, key, userDestination, payload.bytes());
+        }
+    }
+
+    private void send(String destination, EncodedPayload payload, ClusterEnvelope.Kind kind) {
+        if (payload == null) {
+            return;
+        }
+        deliver(destination, payload, kind);
+        if (interestRegistry.hasRemoteInterest(destination)) {
+            relay(kind, destination, destination, payload.bytes());
+        }
+    }
+
+    private void relay(ClusterEnvelope.Kind kind, String key, String destination, byte[] json) {
+        try {
+            transport.publish(ClusterEnvelope.message(kind, transport.getNodeId(), key, destination, json));
+        } catch (Exception e) {
+            log.error("Could not relay message for {} to other nodes", destination, e);
+        }
+    }
+
+    private void onEnvelope(ClusterEnvelope envelope) {
+        if ((envelope.kind() != ClusterEnvelope.Kind.MESSAGE && envelope.kind() != ClusterEnvelope.Kind.TRANSIENT_MESSAGE)
+                || transport.getNodeId().equals(envelope.originNodeId())
+                || !interestRegistry.hasLocalInterest(envelope.key())) {
+            return;
+        }
+        deliver(envelope.destination(), new EncodedPayload(envelope.payload()), envelope.kind());
+    }
+
+    // The payload is already JSON, so hand the bytes to the broker without converting again
+    private void deliver(String destination, EncodedPayload payload, ClusterEnvelope.Kind kind) {
+        if (kind == ClusterEnvelope.Kind.MESSAGE && destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            String roomId = destination.substring(ROOM_TOPIC_PREFIX.length());
+            replayLog.append(roomId, destination, payload.bytes(), frame -> messagingTemplate.send(destination, jsonMessage(payload, frame)));
+        } else {
+            messagingTemplate.send(destination, jsonMessage(payload, null));
+        }
+    }
+
+    private static Message<byte[]> jsonMessage(EncodedPayload payload, RoomReplayLog.Frame frame) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        // Plain headers are copied by reference into every subscriber's message, unlike native headers
+        accessor.setHeader(EncodedPayload.HEADER, payload);
+        if (frame != null) {
+            accessor.setHeader(RoomReplayLog.FRAME_TOKEN_HEADER, frame.token());
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload.bytes(), accessor.getMessageHeaders());
+    }
+}
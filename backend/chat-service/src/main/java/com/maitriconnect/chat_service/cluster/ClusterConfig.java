@@ -0,0 +1,33 @@
+package com.maitriconnect.chat_service.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.UUID;
+
+// chat.cluster.transport selects how nodes exchange messages: "loopback" (default, single node)
+// or "mongo" to run several chat-service instances behind the gateway
+@Configuration
+public class ClusterConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "chat.cluster.transport", havingValue = "loopback", matchIfMissing = true)
+    public ClusterTransport loopbackClusterTransport(@Value("${chat.cluster.node-id:}") String nodeId) {
+        return new LoopbackClusterTransport(resolveNodeId(nodeId));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "chat.cluster.transport", havingValue = "mongo")
+    public ClusterTransport mongoClusterTransport(@Value("${chat.cluster.node-id:}") String nodeId,
+                                                  @Value("${chat.cluster.mongo.capped-size-bytes:67108864}") long cappedSizeBytes,
+                                                  MongoTemplate mongoTemplate) {
+        return new MongoClusterTransport(resolveNodeId(nodeId), mongoTemplate, cappedSizeBytes);
+    }
+
+    private String resolveNodeId(String nodeId) {
+        return nodeId == null || nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+    }
+}
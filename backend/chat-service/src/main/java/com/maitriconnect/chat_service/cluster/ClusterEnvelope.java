@@ -0,0 +1,28 @@
+package com.maitriconnect.chat_service.cluster;
+
+import java.util.List;
+
+// Unit exchanged between chat-service nodes. MESSAGE carries an already serialized payload for a
+// destination, TRANSIENT_MESSAGE one that receivers must not log for replay; the INTEREST_* kinds let nodes learn which destinations have subscribers elsewhere.
+public record ClusterEnvelope(Kind kind, String originNodeId, String key, String destination, byte[] payload, List<String> keys) {
+
+    public enum Kind {
+        MESSAGE, TRANSIENT_MESSAGE, INTEREST_ADD, INTEREST_REMOVE, INTEREST_SNAPSHOT, SYNC_REQUEST
+    }
+
+    public static ClusterEnvelope message(Kind kind, String originNodeId, String key, String destination, byte[] payload) {
+        return new ClusterEnvelope(kind, originNodeId, key, destination, payload, null);
+    }
+
+    public static ClusterEnvelope interest(Kind kind, String originNodeId, String key) {
+        return new ClusterEnvelope(kind, originNodeId, key, null, null, null);
+    }
+
+    public static ClusterEnvelope snapshot(String originNodeId, List<String> keys) {
+        return new ClusterEnvelope(Kind.INTEREST_SNAPSHOT, originNodeId, null, null, null, keys);
+    }
+
+    public static ClusterEnvelope syncRequest(String originNodeId) {
+        return new ClusterEnvelope(Kind.SYNC_REQUEST, originNodeId, null, null, null, null);
+    }
+}
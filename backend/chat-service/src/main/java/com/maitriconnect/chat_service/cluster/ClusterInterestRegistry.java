@@ -0,0 +1,215 @@
+package com.maitriconnect.chat_service.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Tracks which destinations have subscribers on this node and on the other nodes. Local changes are
+// announced as they happen (0 -> 1 and 1 -> 0 transitions) and as a full snapshot every heartbeat;
+// a node that stops sending snapshots is forgotten after three missed heartbeats. A snapshot is
+// diffed against what is known of its node, so keys it still has never drop out in between.
+@Component
+public class ClusterInterestRegistry {
+
+    private static final String USER_KEY_PREFIX = "user:";
+
+    private final ClusterTransport transport;
+    private final long heartbeatMs;
+
+    private final Map<String, Integer> localCounts = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> subscriptionsBySession = new ConcurrentHashMap<>();
+    private final Map<String, String> userKeyBySession = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> remoteNodesByKey = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> remoteKeysByNode = new ConcurrentHashMap<>();
+    private final Map<String, Long> nodeLastSeen = new ConcurrentHashMap<>();
+
+    public ClusterInterestRegistry(ClusterTransport transport,
+                                   @Value("${chat.cluster.heartbeat-ms:10000}") long heartbeatMs) {
+        this.transport = transport;
+        this.heartbeatMs = heartbeatMs;
+        transport.subscribe(this::onEnvelope);
+    }
+
+    public static String userKey(String user) {
+        return USER_KEY_PREFIX + user;
+    }
+
+    public boolean hasRemoteInterest(String key) {
+        Set<String> nodes = remoteNodesByKey.get(key);
+        return nodes != null && !nodes.isEmpty();
+    }
+
+    public boolean hasLocalInterest(String key) {
+        return localCounts.containsKey(key);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void announce() {
+        transport.publish(ClusterEnvelope.syncRequest(transport.getNodeId()));
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user != null && sessionId != null) {
+            String key = userKey(user.getName());
+            userKeyBySession.put(sessionId, key);
+            addLocal(key);
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        // User destinations are covered by the per-user key registered on connect
+        if (destination == null || accessor.getSessionId() == null || destination.startsWith("/user/")) {
+            return;
+        }
+        subscriptionsBySession.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+            .put(accessor.getSubscriptionId(), destination);
+        addLocal(destination);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> subscriptions = subscriptionsBySession.get(accessor.getSessionId());
+        if (subscriptions != null) {
+            String destination = subscriptions.remove(accessor.getSubscriptionId());
+            if (destination != null) {
+                removeLocal(destination);
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> subscriptions = subscriptionsBySession.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::removeLocal);
+        }
+        String userKey = userKeyBySession.remove(event.getSessionId());
+        if (userKey != null) {
+            removeLocal(userKey);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.cluster.heartbeat-ms:10000}")
+    public void heartbeat() {
+        transport.publish(ClusterEnvelope.snapshot(transport.getNodeId(), new ArrayList<>(localCounts.keySet())));
+
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(heartbeatMs * 3);
+        nodeLastSeen.forEach((node, lastSeen) -> {
+            if (lastSeen - cutoff < 0 && nodeLastSeen.remove(node, lastSeen)) {
+                forgetNode(node);
+            }
+        });
+    }
+
+    private void addLocal(String key) {
+        if (localCounts.merge(key, 1, Integer::sum) == 1) {
+            transport.publish(ClusterEnvelope.interest(ClusterEnvelope.Kind.INTEREST_ADD, transport.getNodeId(), key));
+        }
+    }
+
+    private void removeLocal(String key) {
+        boolean[] last = new boolean[1];
+        localCounts.computeIfPresent(key, (k, count) -> {
+            if (count <= 1) {
+                last[0] = true;
+                return null;
+            }
+            return count - 1;
+        });
+        if (last[0]) {
+            transport.publish(ClusterEnvelope.interest(ClusterEnvelope.Kind.INTEREST_REMOVE, transport.getNodeId(), key));
+        }
+    }
+
+    private void onEnvelope(ClusterEnvelope envelope) {
+        String origin = envelope.originNodeId();
+        if (transport.getNodeId().equals(origin)) {
+            return;
+        }
+        nodeLastSeen.put(origin, System.nanoTime());
+
+        switch (envelope.kind()) {
+            case INTEREST_ADD:
+                addRemote(envelope.key(), origin);
+                break;
+            case INTEREST_REMOVE:
+                removeRemote(envelope.key(), origin);
+                break;
+            case INTEREST_SNAPSHOT:
+                applySnapshot(origin, envelope.keys() != null ? new HashSet<>(envelope.keys()) : Set.of());
+                break;
+            case SYNC_REQUEST:
+                // A node just started; tell it what we are subscribed to
+                transport.publish(ClusterEnvelope.snapshot(transport.getNodeId(), new ArrayList<>(localCounts.keySet())));
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Adds the keys the node gained first, then drops only the ones it no longer has
+    private void applySnapshot(String node, Set<String> keys) {
+        for (String key : keys) {
+            addRemote(key, node);
+        }
+        Set<String> known = remoteKeysByNode.get(node);
+        if (known != null) {
+            for (String key : known) {
+                if (!keys.contains(key)) {
+                    removeRemote(key, node);
+                }
+            }
+        }
+    }
+
+    private void forgetNode(String node) {
+        Set<String> keys = remoteKeysByNode.remove(node);
+        if (keys != null) {
+            for (String key : keys) {
+                removeRemoteNode(key, node);
+            }
+        }
+    }
+
+    private void addRemote(String key, String node) {
+        remoteKeysByNode.computeIfAbsent(node, n -> ConcurrentHashMap.newKeySet()).add(key);
+        remoteNodesByKey.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(node);
+    }
+
+    private void removeRemote(String key, String node) {
+        Set<String> keys = remoteKeysByNode.get(node);
+        if (keys != null) {
+            keys.remove(key);
+        }
+        removeRemoteNode(key, node);
+    }
+
+    private void removeRemoteNode(String key, String node) {
+        remoteNodesByKey.computeIfPresent(key, (k, nodes) -> {
+            nodes.remove(node);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+}
@@ -0,0 +1,13 @@
+package com.maitriconnect.chat_service.cluster;
+
+import java.util.function.Consumer;
+
+// Inter-node pub/sub used by the cluster fan-out. Every published envelope is delivered to every
+// subscriber on every node, including the publishing node; receivers filter on originNodeId.
+public interface ClusterTransport {
+    String getNodeId();
+
+    void publish(ClusterEnvelope envelope);
+
+    void subscribe(Consumer<ClusterEnvelope> listener);
+}
@@ -0,0 +1,46 @@
+package com.maitriconnect.chat_service.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+
+// A payload serialized to JSON once, to be sent to any number of destinations. The same array backs
+// every local delivery, every subscriber's message, the cluster relay and the replay log, so it must
+// never be modified after encoding.
+//
+// Local deliveries carry it in the HEADER message header, so the compact encoding for sessions that
+// negotiated a binary wire format is also made once per payload rather than once per subscriber.
+public final class EncodedPayload {
+
+    public static final String HEADER = "encodedPayload";
+
+    private final byte[] json;
+    private volatile byte[] compact;
+
+    EncodedPayload(byte[] json) {
+        this.json = json;
+    }
+
+    byte[] bytes() {
+        return json;
+    }
+
+    // The compact encoding from the first call's transcoder; two threads may both transcode, which is
+    // harmless. Null when the transcoder fails, so the caller can fall back to JSON.
+    public byte[] compact(UnaryOperator<byte[]> transcoder) {
+        byte[] encoded = compact;
+        if (encoded == null) {
+            encoded = transcoder.apply(json);
+            compact = encoded;
+        }
+        return encoded;
+    }
+
+    public int size() {
+        return json.length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
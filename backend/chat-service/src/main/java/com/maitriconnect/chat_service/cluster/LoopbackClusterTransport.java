@@ -0,0 +1,54 @@
+package com.maitriconnect.chat_service.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// In-process transport. Transports sharing a Hub behave like nodes of one cluster, which is what
+// tests use; a single transport with its own hub is the default single-node setup.
+public class LoopbackClusterTransport implements ClusterTransport {
+
+    private final String nodeId;
+    private final Hub hub;
+    private final List<Consumer<ClusterEnvelope>> listeners = new CopyOnWriteArrayList<>();
+
+    public LoopbackClusterTransport(String nodeId) {
+        this(nodeId, new Hub());
+    }
+
+    public LoopbackClusterTransport(String nodeId, Hub hub) {
+        this.nodeId = nodeId;
+        this.hub = hub;
+        hub.transports.add(this);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        hub.published.incrementAndGet();
+        for (LoopbackClusterTransport transport : hub.transports) {
+            for (Consumer<ClusterEnvelope> listener : transport.listeners) {
+                listener.accept(envelope);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEnvelope> listener) {
+        listeners.add(listener);
+    }
+
+    public static class Hub {
+        private final List<LoopbackClusterTransport> transports = new CopyOnWriteArrayList<>();
+        private final AtomicLong published = new AtomicLong();
+
+        public long getPublishedCount() {
+            return published.get();
+        }
+    }
+}
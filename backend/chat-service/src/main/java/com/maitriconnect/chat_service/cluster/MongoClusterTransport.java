@@ -0,0 +1,144 @@
+package com.maitriconnect.chat_service.cluster;
+
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Transport over a capped collection that every node tails with an awaiting tailable cursor. It needs
+// nothing beyond the MongoDB deployment chat-service already uses (no replica set required).
+public class MongoClusterTransport implements ClusterTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoClusterTransport.class);
+    private static final String COLLECTION = "cluster_events";
+
+    private final String nodeId;
+    private final MongoTemplate mongoTemplate;
+    private final long cappedSizeBytes;
+    private final List<Consumer<ClusterEnvelope>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+    private Thread tailer;
+
+    public MongoClusterTransport(String nodeId, MongoTemplate mongoTemplate, long cappedSizeBytes) {
+        this.nodeId = nodeId;
+        this.mongoTemplate = mongoTemplate;
+        this.cappedSizeBytes = cappedSizeBytes;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!mongoTemplate.collectionExists(COLLECTION)) {
+            try {
+                mongoTemplate.createCollection(COLLECTION, CollectionOptions.empty().capped().size(cappedSizeBytes));
+            } catch (Exception e) {
+                // Another node created it first
+                log.debug("Capped collection {} not created: {}", COLLECTION, e.getMessage());
+            }
+        }
+        running = true;
+        tailer = new Thread(this::tail, "chat-cluster-tail");
+        tailer.setDaemon(true);
+        tailer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        tailer.interrupt();
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        Document document = new Document("kind", envelope.kind().name())
+            .append("origin", envelope.originNodeId())
+            .append("key", envelope.key())
+            .append("destination", envelope.destination())
+            .append("payload", envelope.payload() != null ? new Binary(envelope.payload()) : null)
+            .append("keys", envelope.keys());
+        mongoTemplate.getCollection(COLLECTION).insertOne(document);
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEnvelope> listener) {
+        listeners.add(listener);
+    }
+
+    private void tail() {
+        MongoCollection<Document> collection = mongoTemplate.getCollection(COLLECTION);
+        // Only events published after this node started are of interest
+        Document newest = collection.find().sort(Sorts.descending("$natural")).limit(1).first();
+        ObjectId lastSeen = newest != null ? newest.getObjectId("_id") : new ObjectId();
+
+        while (running) {
+            try (MongoCursor<Document> cursor = collection.find(Filters.gt("_id", lastSeen))
+                    .cursorType(CursorType.TailableAwait)
+                    .noCursorTimeout(true)
+                    .iterator()) {
+                while (running) {
+                    Document document = cursor.tryNext();
+                    if (document == null) {
+                        if (cursor.getServerCursor() == null) {
+                            break; // dead cursor (e.g. nothing newer yet); reopen below
+                        }
+                        continue;
+                    }
+                    lastSeen = document.getObjectId("_id");
+                    dispatch(toEnvelope(document));
+                }
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("Cluster event tail interrupted, reopening: {}", e.getMessage());
+                }
+            }
+
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void dispatch(ClusterEnvelope envelope) {
+        for (Consumer<ClusterEnvelope> listener : listeners) {
+            try {
+                listener.accept(envelope);
+            } catch (Exception e) {
+                log.error("Cluster listener failed for {} envelope", envelope.kind(), e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClusterEnvelope toEnvelope(Document document) {
+        Binary payload = document.get("payload", Binary.class);
+        return new ClusterEnvelope(
+            ClusterEnvelope.Kind.valueOf(document.getString("kind")),
+            document.getString("origin"),
+            document.getString("key"),
+            document.getString("destination"),
+            payload != null ? payload.getData() : null,
+            (List<String>) document.get("keys"));
+    }
+}
@@ -0,0 +1,196 @@
+package com.maitriconnect.chat_service.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// The last frames-per-room frames delivered to each room topic on this node, so a session that
+// reconnects can be sent only what it missed. Every logged frame carries a resume token
+// ("logId:seq:millis", seq being the per-room sequence) that the client hands back on SUBSCRIBE.
+// It is the only header added, since the broker copies native headers for every subscriber.
+//
+// Sequences are per node: sessions only ever receive frames from the node they are connected to, and
+// frames relayed from other nodes are stamped on arrival. A log id names one node process and one
+// lifetime of a room's log, so a token from another node, an earlier process or an evicted log is
+// recognised as foreign rather than compared against unrelated sequence numbers.
+//
+// A resume holds the room's appends back while the broker registers the subscription and notes the
+// log position then, so the replay stops exactly where live delivery to the new subscription starts.
+//
+// Rooms are evicted least recently used first once the frames of all rooms exceed max-bytes.
+@Component
+public class RoomReplayLog {
+
+    public static final String TOKEN_HEADER = "resume-token";
+    // Carries a live frame's token to the outbound channel, where ResumeTokenInterceptor writes it
+    public static final String FRAME_TOKEN_HEADER = "resumeToken";
+
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+    private final int framesPerRoom;
+    private final long maxBytes;
+
+    // Access-ordered, guarded by itself; a room's frames are guarded by the room's lock
+    private final LinkedHashMap<String, RoomLog> rooms = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private long incarnations;
+
+    private final Counter evictions;
+
+    public RoomReplayLog(@Value("${chat.replay.frames-per-room:256}") int framesPerRoom,
+                         @Value("${chat.replay.max-bytes:33554432}") long maxBytes,
+                         MeterRegistry meterRegistry) {
+        this.framesPerRoom = framesPerRoom;
+        this.maxBytes = maxBytes;
+        this.evictions = Counter.builder("chat.replay.evictions")
+            .description("Room replay logs evicted to stay within the memory budget").register(meterRegistry);
+        Gauge.builder("chat.replay.bytes", this, log -> log.getTotalBytes())
+            .description("Payload bytes held for replay").register(meterRegistry);
+    }
+
+    public record Frame(long seq, String token, String destination, byte[] payload) {
+    }
+
+    public record ResumeToken(String logId, long seq, long millis) {
+
+        // Null for anything that is not a token this class issued
+        public static ResumeToken parse(String token) {
+            if (token == null) {
+                return null;
+            }
+            String[] parts = token.trim().split(":");
+            if (parts.length != 3 || parts[0].isEmpty()) {
+                return null;
+            }
+            try {
+                return new ResumeToken(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    // Stamps the next sequence on a frame, records it and hands it to sender while holding the room's
+    // lock, so frames reach the broker in sequence order and a subscription registered under a hold
+    // gets each frame either from the log or live, never both
+    public void append(String roomId, String destination, byte[] payload, Consumer<Frame> sender) {
+        RoomLog room;
+        synchronized (rooms) {
+            room = rooms.computeIfAbsent(roomId, id -> new RoomLog(epoch + "." + Long.toString(++incarnations, 36)));
+        }
+        room.lock.lock();
+        try {
+            long seq = ++room.lastSeq;
+            Frame frame = new Frame(seq, room.id + ":" + seq + ":" + System.currentTimeMillis(), destination, payload);
+            room.frames.addLast(frame);
+            long delta = payload.length;
+            while (room.frames.size() > framesPerRoom) {
+                delta -= room.frames.removeFirst().payload().length;
+            }
+            sender.accept(frame);
+            synchronized (rooms) {
+                if (rooms.get(roomId) == room) {
+                    room.bytes += delta;
+                    totalBytes += delta;
+                    evictOverBudget();
+                }
+            }
+        } finally {
+            room.lock.unlock();
+        }
+    }
+
+    // Blocks appends to the room until the hold is released and notes the last frame appended so far.
+    // Null when the room has no log the token belongs to, so nothing could be replayed anyway.
+    public Hold hold(String roomId, ResumeToken token) {
+        RoomLog room;
+        synchronized (rooms) {
+            room = rooms.get(roomId);
+        }
+        if (room == null || !room.id.equals(token.logId())) {
+            return null;
+        }
+        room.lock.lock();
+        return new Hold(room, room.lastSeq);
+    }
+
+    // Hands the frames after the token up to the hold's position to sender, oldest first, and returns
+    // how many there were; -1 when the log cannot vouch for the whole range
+    public int replay(Hold hold, ResumeToken token, Consumer<Frame> sender) {
+        RoomLog room = hold.room;
+        room.lock.lock();
+        try {
+            Frame oldest = room.frames.peekFirst();
+            if (token.seq() > hold.seq || (oldest != null && token.seq() < oldest.seq() - 1)) {
+                return -1;
+            }
+            int replayed = 0;
+            for (Frame frame : room.frames) {
+                if (frame.seq() > token.seq() && frame.seq() <= hold.seq) {
+                    sender.accept(frame);
+                    replayed++;
+                }
+            }
+            return replayed;
+        } finally {
+            room.lock.unlock();
+        }
+    }
+
+    public long getTotalBytes() {
+        synchronized (rooms) {
+            return totalBytes;
+        }
+    }
+
+    private void evictOverBudget() {
+        Iterator<RoomLog> eldestFirst = rooms.values().iterator();
+        // Never evict the most recently used room, even if it alone exceeds the budget
+        while (totalBytes > maxBytes && rooms.size() > 1 && eldestFirst.hasNext()) {
+            totalBytes -= eldestFirst.next().bytes;
+            eldestFirst.remove();
+            evictions.increment();
+        }
+    }
+
+    // A room's log position, with the room's appends blocked until release is called on the same thread
+    public static final class Hold {
+        private final RoomLog room;
+        private final long seq;
+
+        private Hold(RoomLog room, long seq) {
+            this.room = room;
+            this.seq = seq;
+        }
+
+        public long seq() {
+            return seq;
+        }
+
+        public void release() {
+            room.lock.unlock();
+        }
+    }
+
+    private static final class RoomLog {
+        private final String id;
+        private final ReentrantLock lock = new ReentrantLock();
+        // Oldest first
+        private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+        private long lastSeq;
+        // Guarded by the rooms map
+        private long bytes;
+
+        private RoomLog(String id) {
+            this.id = id;
+        }
+    }
+}
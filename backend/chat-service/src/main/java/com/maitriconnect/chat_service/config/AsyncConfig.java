@@ -0,0 +1,79 @@
+package com.maitriconnect.chat_service.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// Runs the @Async MessagesPersistedEvent listeners (acks, unread counters, reactions, search index, room
+// summaries) off the write-behind flusher thread. Each listener is its own task, so one that throws
+// or is slow neither skips the others nor holds up persistence. Once queue-capacity tasks are waiting
+// the flusher runs the next one itself, which slows persistence down rather than dropping projections.
+//
+// The executor is a bean so the context shuts it down: it waits up to await-termination-seconds for
+// queued listeners. MessageWriteBehindQueue depends on it and so flushes its last batch first, and
+// it depends on mongoTemplate, which therefore stays open until the listeners are done.
+@Configuration
+@EnableAsync(proxyTargetClass = true)
+public class AsyncConfig implements AsyncConfigurer {
+
+    public static final String PERSISTED_EVENTS_EXECUTOR = "persistedEventsExecutor";
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncConfig.class);
+
+    private final MeterRegistry meterRegistry;
+    private final int poolSize;
+    private final int queueCapacity;
+    private final int awaitTerminationSeconds;
+
+    public AsyncConfig(MeterRegistry meterRegistry,
+                       @Value("${chat.persisted-events.pool-size:4}") int poolSize,
+                       @Value("${chat.persisted-events.queue-capacity:1000}") int queueCapacity,
+                       @Value("${chat.persisted-events.await-termination-seconds:30}") int awaitTerminationSeconds) {
+        this.meterRegistry = meterRegistry;
+        this.poolSize = poolSize;
+        this.queueCapacity = queueCapacity;
+        this.awaitTerminationSeconds = awaitTerminationSeconds;
+    }
+
+    @Bean(PERSISTED_EVENTS_EXECUTOR)
+    @DependsOn("mongoTemplate")
+    public ThreadPoolTaskExecutor persistedEventsExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("persisted-events-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(awaitTerminationSeconds);
+        Gauge.builder("chat.persisted-events.queued", executor, ThreadPoolTaskExecutor::getQueueSize)
+            .description("Persisted-message listener tasks waiting for a thread").register(meterRegistry);
+        return executor;
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return persistedEventsExecutor();
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (e, method, params) -> {
+            String listener = method.getDeclaringClass().getSimpleName();
+            meterRegistry.counter("chat.persisted-events.failures", "listener", listener).increment();
+            log.error("{}.{} failed", listener, method.getName(), e);
+        };
+    }
+}
@@ -1,46 +1,75 @@
 package com.maitriconnect.chat_service.config;
 
+import com.maitriconnect.chat_service.service.RoomMembershipCache;
 import com.maitriconnect.chat_service.util.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
-import java.util.List;
 
+// Authenticates a STOMP session once, on its CONNECT frame. The principal set here is remembered by
+// the session and stamped on every later frame, so SEND/SUBSCRIBE only need a null check.
 @Component
 public class AuthChannelInterceptor implements ChannelInterceptor {
 
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room.";
+
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private RoomMembershipCache roomMembershipCache;
+
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
-        
-        if (accessor != null) {
-            List<String> authHeaders = accessor.getNativeHeader("Authorization");
-            if (authHeaders != null && !authHeaders.isEmpty()) {
-                String token = authHeaders.get(0);
-                if (token != null && token.startsWith("Bearer ")) {
-                    token = token.substring(7);
-                    if (jwtUtil.validateToken(token)) {
-                        String username = jwtUtil.extractUsername(token);
-                        String userId = jwtUtil.extractUserId(token);
-                        
-                        UsernamePasswordAuthenticationToken auth = 
-                            new UsernamePasswordAuthenticationToken(username, null, null);
-                        auth.setDetails(userId);
-                        SecurityContextHolder.getContext().setAuthentication(auth);
-                        accessor.setUser(auth);
-                    }
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        switch (accessor.getCommand()) {
+            case CONNECT:
+            case STOMP:
+                accessor.setUser(authenticate(accessor.getFirstNativeHeader("Authorization")));
+                break;
+            case SEND:
+                requirePrincipal(message, accessor);
+                break;
+            case SUBSCRIBE:
+                StompPrincipal user = requirePrincipal(message, accessor);
+                String destination = accessor.getDestination();
+                // Room topics are only for participants; a cache hit makes this a set lookup
+                if (destination != null && destination.startsWith(ROOM_TOPIC_PREFIX)
+                        && !roomMembershipCache.isMember(destination.substring(ROOM_TOPIC_PREFIX.length()), user.userId())) {
+                    throw new MessageDeliveryException(message, "Not a participant of " + destination);
                 }
-            }
+                break;
+            default:
+                break;
         }
         return message;
     }
-}
\ No newline at end of file
+
+    private StompPrincipal requirePrincipal(Message<?> message, StompHeaderAccessor accessor) {
+        if (!(accessor.getUser() instanceof StompPrincipal user)) {
+            throw new MessageDeliveryException(message, "Not authenticated");
+        }
+        return user;
+    }
+
+    private StompPrincipal authenticate(String authHeader) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            throw new MessageDeliveryException("Missing bearer token");
+        }
+        JwtUtil.VerifiedToken token = jwtUtil.verify(authHeader.substring(7));
+        if (token == null || token.userId() == null) {
+            throw new MessageDeliveryException("Invalid token");
+        }
+        return new StompPrincipal(token.userId(), token.username());
+    }
+}
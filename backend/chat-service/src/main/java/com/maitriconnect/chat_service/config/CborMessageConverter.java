@@ -0,0 +1,54 @@
+package com.maitriconnect.chat_service.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+// Reads SEND frames whose content-type is application/cbor with the application's Jackson settings,
+// and transcodes outbound JSON payloads to compact CBOR for sessions that negotiated it. Frames without
+// a content-type are left to the JSON converter, so existing clients are unaffected.
+@Component
+public class CborMessageConverter extends MappingJackson2MessageConverter {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final ObjectMapper jsonMapper;
+
+    public CborMessageConverter(ObjectMapper jsonMapper) {
+        super(jsonMapper.copyWith(new CBORFactory()), APPLICATION_CBOR);
+        this.jsonMapper = jsonMapper;
+        setStrictContentTypeMatch(true);
+    }
+
+    // CBOR for a JSON payload, leaving out null fields, empty lists and empty maps, which clients read
+    // as their defaults
+    public byte[] transcode(byte[] json) throws IOException {
+        JsonNode tree = jsonMapper.readTree(json);
+        omitDefaults(tree);
+        return getObjectMapper().writeValueAsBytes(tree);
+    }
+
+    private static void omitDefaults(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            Iterator<Map.Entry<String, JsonNode>> fields = object.properties().iterator();
+            while (fields.hasNext()) {
+                JsonNode value = fields.next().getValue();
+                if (value.isNull() || (value.isContainerNode() && value.isEmpty())) {
+                    fields.remove();
+                } else {
+                    omitDefaults(value);
+                }
+            }
+        } else if (node.isArray()) {
+            node.forEach(CborMessageConverter::omitDefaults);
+        }
+    }
+}
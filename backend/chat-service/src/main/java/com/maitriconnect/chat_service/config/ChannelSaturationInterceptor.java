@@ -0,0 +1,39 @@
+package com.maitriconnect.chat_service.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Counts messages currently being handled on one client channel. Together with the channel's
+// capacity gauge this shows how close the channel is to saturating its executor.
+public class ChannelSaturationInterceptor implements ExecutorChannelInterceptor {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public ChannelSaturationInterceptor(String channel, MeterRegistry meterRegistry) {
+        Gauge.builder("chat.ws.channel.inflight", inFlight, AtomicInteger::get)
+            .tag("channel", channel)
+            .description("Messages currently being handled on the channel")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        inFlight.incrementAndGet();
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        inFlight.decrementAndGet();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
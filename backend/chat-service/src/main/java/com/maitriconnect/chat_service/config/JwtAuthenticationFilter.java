@@ -32,17 +32,16 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         try {
-            final String token = authHeader.substring(7);
-            final String username = jwtUtil.extractUsername(token);
-            final String userId = jwtUtil.extractUserId(token);
-
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                if (jwtUtil.validateToken(token)) {
-                    UsernamePasswordAuthenticationToken authToken = 
-                        new UsernamePasswordAuthenticationToken(username, null, null);
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                }
+            // One parse (or cache hit) yields everything we need from the token
+            final JwtUtil.VerifiedToken token = jwtUtil.verify(authHeader.substring(7));
+
+            if (token != null && token.username() != null
+                    && SecurityContextHolder.getContext().getAuthentication() == null) {
+                // Same identity as a STOMP session, so controllers can check the caller's userId
+                UsernamePasswordAuthenticationToken authToken = 
+                    new UsernamePasswordAuthenticationToken(new StompPrincipal(token.userId(), token.username()), null, null);
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
             }
         } catch (Exception e) {
             logger.error("JWT authentication failed", e);
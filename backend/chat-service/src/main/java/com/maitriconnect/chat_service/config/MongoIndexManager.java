@@ -0,0 +1,126 @@
+package com.maitriconnect.chat_service.config;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Creates the indexes declared in RequiredIndexes when the service starts and logs a report:
+// declared indexes that are missing, indexes in the database nobody declared, and declared indexes
+// with no recorded use ($indexStats counts since the mongod last started). A unique index is a
+// correctness guard rather than a speed-up, so startup fails when one cannot be created; other
+// indexes only log. The services build separately and share no code, so each carries this class.
+@Component
+public class MongoIndexManager {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexManager.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${mongo.indexes.require-unique:true}")
+    private boolean requireUnique;
+
+    // Runs before other startup listeners (e.g. backfills) that depend on these indexes
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onStartup() {
+        ensureIndexes();
+        try {
+            report().log();
+        } catch (Exception e) {
+            log.warn("Could not build index report", e);
+        }
+    }
+
+    public void ensureIndexes() {
+        List<String> failedUnique = new ArrayList<>();
+        for (RequiredIndexes.RequiredIndex index : RequiredIndexes.ALL) {
+            try {
+                mongoTemplate.indexOps(index.entity()).createIndex(index.toDefinition());
+            } catch (Exception e) {
+                log.error("Could not create index {} on {}", index.name(), collection(index), e);
+                if (index.unique()) {
+                    failedUnique.add(collection(index) + "." + index.name());
+                }
+            }
+        }
+        if (requireUnique && !failedUnique.isEmpty()) {
+            throw new IllegalStateException("Could not create required unique indexes " + failedUnique);
+        }
+    }
+
+    public IndexReport report() {
+        Map<String, Set<String>> declaredByCollection = new LinkedHashMap<>();
+        Map<String, Class<?>> entityByCollection = new LinkedHashMap<>();
+        for (RequiredIndexes.RequiredIndex index : RequiredIndexes.ALL) {
+            declaredByCollection.computeIfAbsent(collection(index), c -> new LinkedHashSet<>()).add(index.name());
+            entityByCollection.putIfAbsent(collection(index), index.entity());
+        }
+
+        List<String> missing = new ArrayList<>();
+        List<String> undeclared = new ArrayList<>();
+        List<String> unused = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : declaredByCollection.entrySet()) {
+            String collection = entry.getKey();
+            Set<String> existing = new LinkedHashSet<>();
+            for (IndexInfo info : mongoTemplate.indexOps(entityByCollection.get(collection)).getIndexInfo()) {
+                existing.add(info.getName());
+            }
+            for (String name : entry.getValue()) {
+                if (!existing.contains(name)) {
+                    missing.add(collection + "." + name);
+                }
+            }
+            for (String name : existing) {
+                if (!"_id_".equals(name) && !entry.getValue().contains(name)) {
+                    undeclared.add(collection + "." + name);
+                }
+            }
+            for (Document stats : mongoTemplate.getCollection(collection)
+                    .aggregate(List.of(new Document("$indexStats", new Document())))) {
+                String name = stats.getString("name");
+                Document accesses = stats.get("accesses", Document.class);
+                Number ops = accesses != null ? accesses.get("ops", Number.class) : null;
+                if (entry.getValue().contains(name) && ops != null && ops.longValue() == 0) {
+                    unused.add(collection + "." + name);
+                }
+            }
+        }
+        return new IndexReport(missing, undeclared, unused);
+    }
+
+    private String collection(RequiredIndexes.RequiredIndex index) {
+        return mongoTemplate.getCollectionName(index.entity());
+    }
+
+    public record IndexReport(List<String> missing, List<String> undeclared, List<String> unused) {
+
+        void log() {
+            if (!missing.isEmpty()) {
+                log.warn("Missing declared indexes: {}", missing);
+            }
+            if (!undeclared.isEmpty()) {
+                log.warn("Indexes not declared in RequiredIndexes (candidates for removal): {}", undeclared);
+            }
+            if (!unused.isEmpty()) {
+                log.info("Declared indexes with no use since mongod start: {}", unused);
+            }
+        }
+    }
+}
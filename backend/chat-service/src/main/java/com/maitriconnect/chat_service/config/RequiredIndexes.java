@@ -0,0 +1,112 @@
+package com.maitriconnect.chat_service.config;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.ChatRoom;
+import com.maitriconnect.chat_service.model.FileMetadata;
+import com.maitriconnect.chat_service.model.MessageReaction;
+import com.maitriconnect.chat_service.model.RoomReadState;
+import com.maitriconnect.chat_service.model.UnreadCounter;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+
+import java.util.List;
+
+// Every index the service relies on, with the repository methods and queries it serves. This is the
+// single source of truth: MongoIndexManager ensures these at startup (Spring Boot's automatic index
+// creation is off), and the explain() tests check each listed query against them.
+public final class RequiredIndexes {
+
+    // partialFilter, when set, limits the index to matching documents; queries must imply the filter
+    public record RequiredIndex(Class<?> entity, String name, Document keys, boolean unique, boolean sparse,
+                                Document partialFilter, List<String> usedBy) {
+
+        public Index toDefinition() {
+            CompoundIndexDefinition definition = new CompoundIndexDefinition(keys);
+            definition.named(name);
+            if (unique) {
+                definition.unique();
+            }
+            if (sparse) {
+                definition.sparse();
+            }
+            if (partialFilter != null) {
+                definition.partial(PartialIndexFilter.of(partialFilter));
+            }
+            return definition;
+        }
+    }
+
+    public static final List<RequiredIndex> ALL = List.of(
+        index(ChatMessage.class, "room_seq_timestamp_id",
+            new Document("chatRoomId", 1).append("seq", -1).append("timestamp", -1).append("_id", -1),
+            "ChatMessageRepository.findRoomPage"),
+        index(ChatMessage.class, "room_timestamp_id",
+            new Document("chatRoomId", 1).append("timestamp", -1).append("_id", -1),
+            "ChatMessageRepository.findByChatRoomIdOrderByTimestampAsc",
+            "ChatMessageRepository.findFirstByChatRoomIdOrderByTimestampDesc", "ChatMessageRepository.findRoomsSince",
+            "ReadStateService.countUnread"),
+        index(ChatMessage.class, "sender_receiver_timestamp_id",
+            new Document("senderId", 1).append("receiverId", 1).append("timestamp", -1).append("_id", -1),
+            "ChatMessageRepository.findDirectPage", "ChatMessageRepository.findDirectMessages",
+            "ChatMessageRepository.findBySenderIdOrReceiverIdOrderByTimestampDesc (sender branch)"),
+        index(ChatMessage.class, "receiver_status",
+            new Document("receiverId", 1).append("status", 1),
+            "ChatMessageRepository.countByReceiverIdAndStatus",
+            "ChatMessageRepository.findBySenderIdOrReceiverIdOrderByTimestampDesc (receiver branch)"),
+        index(ChatMessage.class, "timestamp_id",
+            new Document("timestamp", 1).append("_id", 1),
+            "ChatMessageRepository.streamSince (search index catch-up)"),
+        // Only messages that ever had a reaction carry reactionsUpdatedAt, so the partial index stays small
+        partial(ChatMessage.class, "room_reactions_updated",
+            new Document("chatRoomId", 1).append("reactionsUpdatedAt", 1),
+            new Document("reactionsUpdatedAt", new Document("$exists", true)),
+            "ChatMessageRepository.findReactionsChangedSince"),
+
+        index(ChatRoom.class, "participants_type",
+            new Document("participants", 1).append("type", 1),
+            "ChatRoomRepository.findByParticipantsContaining", "ChatRoomRepository.findByParticipantsContainingAndType",
+            "ChatRoomRepository.findByParticipantsContainingAndCreatedAtGreaterThanEqual"),
+        unique(ChatRoom.class, "direct_key", new Document("directKey", 1), true,
+            "ChatRoomRepository.findByDirectKey", "DirectRoomService.getOrCreate"),
+
+        unique(MessageReaction.class, "message_user_emoji",
+            new Document("messageId", 1).append("userId", 1).append("emoji", 1), false,
+            "MessageReactionRepository.findByMessageId", "MessageReactionRepository.findByMessageIdIn",
+            "MessageReactionRepository.findByMessageIdAndUserIdAndEmoji",
+            "MessageReactionRepository.deleteByMessageIdAndUserIdAndEmoji", "MessageReactionRepository.countByMessageIdAndEmoji",
+            "ReactionService (duplicate guard)"),
+
+        index(FileMetadata.class, "message", new Document("messageId", 1),
+            "FileMetadataRepository.findByMessageId"),
+        index(FileMetadata.class, "room_uploaded", new Document("chatRoomId", 1).append("uploadedAt", -1),
+            "FileMetadataRepository.findByChatRoomId"),
+        index(FileMetadata.class, "uploader_uploaded", new Document("uploadedBy", 1).append("uploadedAt", -1),
+            "FileMetadataRepository.findByUploadedBy"),
+
+        unique(RoomReadState.class, "room_user", new Document("roomId", 1).append("userId", 1), false,
+            "RoomReadStateRepository.findByRoomId", "RoomReadStateRepository.findByRoomIdIn",
+            "RoomReadStateRepository.findByRoomIdInAndUpdatedAtGreaterThanEqual"),
+        index(RoomReadState.class, "user_room", new Document("userId", 1).append("roomId", 1),
+            "RoomReadStateRepository.findByUserId"),
+
+        index(UnreadCounter.class, "user_room", new Document("userId", 1).append("roomId", 1),
+            "UnreadCounterRepository.findByUserId")
+    );
+
+    private RequiredIndexes() {
+    }
+
+    private static RequiredIndex index(Class<?> entity, String name, Document keys, String... usedBy) {
+        return new RequiredIndex(entity, name, keys, false, false, null, List.of(usedBy));
+    }
+
+    private static RequiredIndex partial(Class<?> entity, String name, Document keys, Document filter, String... usedBy) {
+        return new RequiredIndex(entity, name, keys, false, false, filter, List.of(usedBy));
+    }
+
+    private static RequiredIndex unique(Class<?> entity, String name, Document keys, boolean sparse, String... usedBy) {
+        return new RequiredIndex(entity, name, keys, true, sparse, null, List.of(usedBy));
+    }
+}
@@ -0,0 +1,35 @@
+package com.maitriconnect.chat_service.config;
+
+import com.maitriconnect.chat_service.cluster.RoomReplayLog;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+// Writes the resume-token of a room frame into the STOMP frame of each subscriber's copy. The
+// broadcaster carries the token as a plain header, which the simple broker shares by reference
+// across subscribers; as a native header it would be copied into every subscriber's message first.
+//
+// The frame's STOMP headers are built here rather than by StompSubProtocolHandler, which sends a
+// message with STOMP headers as it is, so each subscriber's headers are still built only once.
+@Component
+public class ResumeTokenInterceptor implements ExecutorChannelInterceptor {
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        if (!(message.getHeaders().get(RoomReplayLog.FRAME_TOKEN_HEADER) instanceof String token)
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        accessor.updateStompCommandAsServerMessage();
+        accessor.setNativeHeader(RoomReplayLog.TOKEN_HEADER, token);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+}
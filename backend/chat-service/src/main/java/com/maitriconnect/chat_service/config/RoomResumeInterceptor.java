@@ -0,0 +1,194 @@
+package com.maitriconnect.chat_service.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maitriconnect.chat_service.cluster.RoomReplayLog;
+import com.maitriconnect.chat_service.dto.PresenceEvent;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Resumes room subscriptions after a reconnect. A SUBSCRIBE to a room topic may carry a "resume"
+// header with the last resume-token the client saw in that room; CONNECT may carry tokens for several
+// rooms at once as "resume: roomId=token,roomId=token". Once the broker has registered the
+// subscription the missed frames are sent to that subscription only, from the room's replay log,
+// up to the position the log had while the subscription was being registered.
+//
+// When the log no longer covers the gap (another node, a restart, or too many frames since) a RESYNC
+// frame is sent instead, which tells the client to run a delta sync. Mongo alone could not stand in:
+// it lacks messages still in the write-behind queue and has no record of reactions or receipts.
+@Component
+public class RoomResumeInterceptor implements ExecutorChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomResumeInterceptor.class);
+
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room.";
+    private static final String RESUME_HEADER = "resume";
+    private static final String TOKENS_ATTRIBUTE = "resumeTokens";
+    private static final int MAX_CONNECT_TOKENS = 100;
+
+    @Autowired
+    private RoomReplayLog replayLog;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Depends on the broker configuration this interceptor is registered with
+    @Lazy
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    // Taken before the broker registers the subscription and released right after on the same thread
+    private final ThreadLocal<PendingResume> pending = new ThreadLocal<>();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        if ((accessor.getCommand() == StompCommand.CONNECT || accessor.getCommand() == StompCommand.STOMP)
+                && accessor.getSessionAttributes() != null) {
+            Map<String, String> tokens = parseConnectTokens(accessor.getFirstNativeHeader(RESUME_HEADER));
+            if (!tokens.isEmpty()) {
+                accessor.getSessionAttributes().put(TOKENS_ATTRIBUTE, tokens);
+            }
+        }
+        return message;
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        if (!(handler instanceof AbstractBrokerMessageHandler)) {
+            return message;
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        String destination = accessor.getDestination();
+        if (accessor.getCommand() != StompCommand.SUBSCRIBE
+                || destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return message;
+        }
+        String roomId = destination.substring(ROOM_TOPIC_PREFIX.length());
+        String token = accessor.getFirstNativeHeader(RESUME_HEADER);
+        String connectToken = connectToken(accessor, roomId);
+        if (token == null) {
+            token = connectToken;
+        }
+        RoomReplayLog.ResumeToken resume = RoomReplayLog.ResumeToken.parse(token);
+        if (resume != null) {
+            // No frame reaches the room until the subscription is registered, so the replay ends
+            // exactly where live delivery to it begins
+            pending.set(new PendingResume(roomId, resume, replayLog.hold(roomId, resume)));
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        PendingResume resume = handler instanceof AbstractBrokerMessageHandler ? pending.get() : null;
+        if (resume == null) {
+            return;
+        }
+        pending.remove();
+        if (resume.hold() != null) {
+            resume.hold().release();
+        }
+        if (ex != null) {
+            return;
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        try {
+            resume(accessor, accessor.getDestination(), resume);
+        } catch (Exception e) {
+            log.error("Could not resume {} for session {}", accessor.getDestination(), accessor.getSessionId(), e);
+        }
+    }
+
+    private void resume(StompHeaderAccessor subscribe, String destination, PendingResume resume) {
+        String sessionId = subscribe.getSessionId();
+        String subscriptionId = subscribe.getSubscriptionId();
+        int replayed = resume.hold() == null ? -1 : replayLog.replay(resume.hold(), resume.token(),
+            frame -> clientOutboundChannel.send(toSubscription(sessionId, subscriptionId, destination, frame.payload(), frame)));
+        if (replayed >= 0) {
+            meterRegistry.counter("chat.replay.resumes", "result", "log").increment();
+            meterRegistry.counter("chat.replay.frames").increment(replayed);
+            return;
+        }
+
+        meterRegistry.counter("chat.replay.resumes", "result", "resync").increment();
+        send(sessionId, subscriptionId, destination, new PresenceEvent(ChatMessage.MessageType.RESYNC, resume.roomId(), null));
+    }
+
+    private void send(String sessionId, String subscriptionId, String destination, Object payload) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(payload);
+            clientOutboundChannel.send(toSubscription(sessionId, subscriptionId, destination, json, null));
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize resume frame for {}", destination, e);
+        }
+    }
+
+    // A MESSAGE addressed to one subscription, shaped like the ones the simple broker sends
+    private static Message<byte[]> toSubscription(String sessionId, String subscriptionId, String destination,
+                                                  byte[] payload, RoomReplayLog.Frame logged) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (logged != null) {
+            accessor.setNativeHeader(RoomReplayLog.TOKEN_HEADER, logged.token());
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    // A CONNECT token is used by the first subscription to its room only
+    @SuppressWarnings("unchecked")
+    private String connectToken(StompHeaderAccessor accessor, String roomId) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !(attributes.get(TOKENS_ATTRIBUTE) instanceof Map<?, ?> tokens)) {
+            return null;
+        }
+        synchronized (tokens) {
+            return ((Map<String, String>) tokens).remove(roomId);
+        }
+    }
+
+    private record PendingResume(String roomId, RoomReplayLog.ResumeToken token, RoomReplayLog.Hold hold) {
+    }
+
+    private static Map<String, String> parseConnectTokens(String header) {
+        Map<String, String> tokens = new HashMap<>();
+        if (header == null) {
+            return tokens;
+        }
+        for (String entry : header.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator > 0 && tokens.size() < MAX_CONNECT_TOKENS) {
+                tokens.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+            }
+        }
+        return tokens;
+    }
+}
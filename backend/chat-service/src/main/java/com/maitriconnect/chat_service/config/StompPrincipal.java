@@ -0,0 +1,13 @@
+package com.maitriconnect.chat_service.config;
+
+import java.security.Principal;
+
+// Identity attached to a STOMP session at CONNECT, and the principal of authenticated REST requests.
+// The name is the userId, so /user/{userId}/... destinations resolve to this session.
+public record StompPrincipal(String userId, String username) implements Principal {
+
+    @Override
+    public String getName() {
+        return userId;
+    }
+}
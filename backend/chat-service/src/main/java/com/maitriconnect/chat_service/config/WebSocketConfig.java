@@ -1,31 +1,174 @@
 package com.maitriconnect.chat_service.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AuthChannelInterceptor authChannelInterceptor;
+
+    @Autowired
+    private RoomResumeInterceptor roomResumeInterceptor;
+
+    @Autowired
+    private WireFormatInterceptor wireFormatInterceptor;
+
+    @Autowired
+    private ResumeTokenInterceptor resumeTokenInterceptor;
+
+    @Autowired
+    private CborMessageConverter cborMessageConverter;
+
+    // "platform" runs handlers on bounded thread pools; "virtual" runs each message on its own
+    // virtual thread (Java 21+) so handlers blocked on Mongo do not hold a pool thread
+    @Value("${chat.ws.executor.mode:platform}")
+    private String executorMode;
+
+    @Value("${chat.ws.inbound.core-pool-size:16}")
+    private int inboundCorePoolSize;
+
+    @Value("${chat.ws.inbound.max-pool-size:64}")
+    private int inboundMaxPoolSize;
+
+    @Value("${chat.ws.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+
+    @Value("${chat.ws.outbound.core-pool-size:16}")
+    private int outboundCorePoolSize;
+
+    @Value("${chat.ws.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${chat.ws.outbound.queue-capacity:2000}")
+    private int outboundQueueCapacity;
+
+    // Upper bound on concurrently handled messages per channel in virtual mode; submitters wait beyond it
+    @Value("${chat.ws.virtual.max-concurrency:2000}")
+    private int virtualMaxConcurrency;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        // Frames to a session leave in the order they were published, even across outbound threads
+        config.setPreservePublishOrder(true);
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        // A session's frames are handled one after another, so they reach RoomOrderedExecutor in receive order
+        registry.setPreserveReceiveOrder(true);
+
         // WebSocket connections need CORS configured here (not just at gateway)
         // because the upgrade from HTTP to WebSocket happens at the service level
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
         
+        // Only the raw endpoint can carry binary frames, so only its sessions may negotiate CBOR
         registry.addEndpoint("/ws")
-                .setAllowedOriginPatterns("*");
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(wireFormatInterceptor);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Runs on the receiving thread, before a frame is queued for a channel thread
+        registration.interceptors(authChannelInterceptor, roomResumeInterceptor, wireFormatInterceptor);
+        configureChannel(registration, "inbound", inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(resumeTokenInterceptor, wireFormatInterceptor);
+        configureChannel(registration, "outbound", outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Alongside the defaults: it only reads frames marked application/cbor
+        messageConverters.add(cborMessageConverter);
+        return true;
+    }
+
+    private void configureChannel(ChannelRegistration registration, String channel,
+                                  int corePoolSize, int maxPoolSize, int queueCapacity) {
+        ChannelSaturationInterceptor saturation = new ChannelSaturationInterceptor(channel, meterRegistry);
+        registration.interceptors(saturation);
+
+        if ("virtual".equalsIgnoreCase(executorMode)) {
+            SimpleAsyncTaskExecutor executor = virtualExecutor(channel);
+            if (executor != null) {
+                registration.executor(executor);
+                registerCapacity(channel, virtualMaxConcurrency);
+                return;
+            }
+        } else if (!"platform".equalsIgnoreCase(executorMode)) {
+            throw new IllegalStateException("Unknown chat.ws.executor.mode: " + executorMode);
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("ws-" + channel + "-");
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        // A full queue pushes back on the submitting thread instead of dropping frames
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        registration.taskExecutor(executor);
+
+        Gauge.builder("chat.ws.channel.queued", executor, ThreadPoolTaskExecutor::getQueueSize)
+            .tag("channel", channel)
+            .description("Messages waiting for a channel thread")
+            .register(meterRegistry);
+        Gauge.builder("chat.ws.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+            .tag("channel", channel)
+            .description("Channel threads currently running a task")
+            .register(meterRegistry);
+        registerCapacity(channel, maxPoolSize);
+    }
+
+    private SimpleAsyncTaskExecutor virtualExecutor(String channel) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("ws-" + channel + "-");
+        try {
+            executor.setVirtualThreads(true);
+        } catch (UnsupportedOperationException e) {
+            log.warn("Virtual threads need Java 21+ (running {}); using platform pools for the {} channel",
+                Runtime.version(), channel);
+            return null;
+        }
+        executor.setConcurrencyLimit(virtualMaxConcurrency);
+        return executor;
+    }
+
+    private void registerCapacity(String channel, int capacity) {
+        Gauge.builder("chat.ws.channel.capacity", () -> capacity)
+            .tag("channel", channel)
+            .description("Maximum messages the channel handles concurrently")
+            .register(meterRegistry);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package com.maitriconnect.chat_service.config;
+
+import com.maitriconnect.chat_service.cluster.EncodedPayload;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Negotiates the body encoding of a STOMP session. JSON is the default; a client that sends
+// "content-type: application/cbor" on CONNECT gets MESSAGE bodies as CBOR with empty fields left out,
+// and may send SEND frames with the same content-type (read by CborMessageConverter).
+//
+// CBOR bodies go out as "application/octet-stream", the only content-type Spring writes as a binary
+// WebSocket frame, so CBOR is only granted to sessions on the raw WebSocket endpoint; SockJS sessions
+// stay on JSON. A payload that cannot be transcoded is sent as JSON, so clients decode each MESSAGE by
+// its content-type. Registered on the inbound channel for negotiation and on the outbound channel,
+// where the transcoding runs on outbound threads and is shared by all subscribers of an EncodedPayload.
+@Component
+public class WireFormatInterceptor implements ExecutorChannelInterceptor, HandshakeInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(WireFormatInterceptor.class);
+
+    private static final String BINARY_FRAMES_ATTRIBUTE = "binaryFrames";
+
+    private final CborMessageConverter cborConverter;
+    private final boolean cborEnabled;
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    public WireFormatInterceptor(CborMessageConverter cborConverter,
+                                 @Value("${chat.ws.cbor.enabled:true}") boolean cborEnabled,
+                                 MeterRegistry meterRegistry) {
+        this.cborConverter = cborConverter;
+        this.cborEnabled = cborEnabled;
+        Gauge.builder("chat.ws.cbor.sessions", cborSessions, Set::size)
+            .description("STOMP sessions receiving CBOR bodies").register(meterRegistry);
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        attributes.put(BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null || accessor.getSessionId() == null) {
+            return message;
+        }
+        if (accessor.getCommand() == StompCommand.CONNECT || accessor.getCommand() == StompCommand.STOMP) {
+            if (cborEnabled && CborMessageConverter.APPLICATION_CBOR.equalsTypeAndSubtype(accessor.getContentType())) {
+                Map<String, Object> attributes = accessor.getSessionAttributes();
+                if (attributes != null && Boolean.TRUE.equals(attributes.get(BINARY_FRAMES_ATTRIBUTE))) {
+                    cborSessions.add(accessor.getSessionId());
+                } else {
+                    log.debug("Session {} asked for CBOR over a text-only transport; sending JSON", accessor.getSessionId());
+                }
+            }
+        } else if (accessor.getCommand() == StompCommand.DISCONNECT) {
+            cborSessions.remove(accessor.getSessionId());
+        }
+        return message;
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        // Broker MESSAGE frames name the subscription they are for; client SEND frames never do
+        if (SimpMessageHeaderAccessor.getSubscriptionId(headers) == null
+                || sessionId == null || !cborSessions.contains(sessionId)
+                || !(message.getPayload() instanceof byte[] json)
+                || !(headers.get(MessageHeaders.CONTENT_TYPE) instanceof MimeType contentType)
+                || !MimeTypeUtils.APPLICATION_JSON.equalsTypeAndSubtype(contentType)) {
+            return message;
+        }
+        byte[] cbor = headers.get(EncodedPayload.HEADER) instanceof EncodedPayload shared
+            ? shared.compact(this::transcode)
+            : transcode(json);
+        if (cbor == null) {
+            return message;
+        }
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+
+    private byte[] transcode(byte[] json) {
+        try {
+            return cborConverter.transcode(json);
+        } catch (IOException e) {
+            log.warn("Could not transcode a frame to CBOR; sending JSON", e);
+            return null;
+        }
+    }
+}
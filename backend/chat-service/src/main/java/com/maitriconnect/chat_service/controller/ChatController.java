@@ -1,23 +1,33 @@
 package com.maitriconnect.chat_service.controller;
 
+import com.maitriconnect.chat_service.cluster.ClusterBroadcaster;
+import com.maitriconnect.chat_service.cluster.EncodedPayload;
+import com.maitriconnect.chat_service.config.StompPrincipal;
+import com.maitriconnect.chat_service.dto.PresenceEvent;
 import com.maitriconnect.chat_service.dto.ReactionRequest;
+import com.maitriconnect.chat_service.dto.ReactionResult;
+import com.maitriconnect.chat_service.dto.ReceiptEvent;
+import com.maitriconnect.chat_service.dto.ReceiptResult;
 import com.maitriconnect.chat_service.model.ChatMessage;
-import com.maitriconnect.chat_service.model.MessageReaction;
 import com.maitriconnect.chat_service.service.ChatService;
+import com.maitriconnect.chat_service.service.MessageRoomLookup;
+import com.maitriconnect.chat_service.service.ReactionBroadcaster;
 import com.maitriconnect.chat_service.service.ReactionService;
+import com.maitriconnect.chat_service.service.RoomOrderedExecutor;
+import com.maitriconnect.chat_service.service.TypingTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
-import java.util.HashMap;
-import java.util.Map;
-
 @Controller
 public class ChatController {
 
+    private static final Logger log = LoggerFactory.getLogger(ChatController.class);
+
     @Autowired
     private ChatService chatService;
 
@@ -25,122 +35,150 @@ public class ChatController {
     private ReactionService reactionService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ClusterBroadcaster broadcaster;
+
+    @Autowired
+    private MessageRoomLookup messageRoomLookup;
+
+    @Autowired
+    private ReactionBroadcaster reactionBroadcaster;
+
+    @Autowired
+    private TypingTracker typingTracker;
+
+    // Frames that touch a room's state run on the room's lane: in order within the room, in parallel
+    // across rooms. Typing only updates memory, so it stays on the channel thread.
+    @Autowired
+    private RoomOrderedExecutor roomExecutor;
 
     @MessageMapping("/chat.sendMessage")
-    public void sendMessage(@Payload ChatMessage chatMessage) {
+    public void sendMessage(@Payload ChatMessage chatMessage, StompPrincipal user) {
         System.out.println("Received message via WebSocket: " + chatMessage.getContent());
         
-        // Save message to database
-        ChatMessage savedMessage = chatService.saveMessage(chatMessage);
+        // The sender is whoever authenticated the session, not whatever the payload claims
+        chatMessage.setSenderId(user.userId());
+        roomExecutor.execute(chatMessage.getChatRoomId(), () -> acceptAndBroadcast(chatMessage, user));
+    }
+
+    private void acceptAndBroadcast(ChatMessage chatMessage, StompPrincipal user) {
+        if (!chatService.isRoomMember(chatMessage.getChatRoomId(), user.userId())) {
+            log.warn("Rejected message from {} to room {}: not a participant", user.userId(), chatMessage.getChatRoomId());
+            return;
+        }
         
+        // Assign an ID and hand off to the write-behind queue; persistence is acknowledged separately
+        ChatMessage savedMessage = chatService.acceptMessage(chatMessage);
+        
+        // Serialized once; the room topic and the receiver's queue share the same bytes
+        EncodedPayload encoded = broadcaster.encode(savedMessage);
+
         // Broadcast to all users in the room
         String destination = "/topic/room." + chatMessage.getChatRoomId();
         System.out.println("Broadcasting to: " + destination);
-        messagingTemplate.convertAndSend(destination, savedMessage);
+        broadcaster.send(destination, encoded);
         
         // Also send to specific user if it's a direct message
         if (chatMessage.getReceiverId() != null && !chatMessage.getReceiverId().isEmpty()) {
             String userDestination = "/queue/messages/" + chatMessage.getReceiverId();
             System.out.println("Sending to user queue: " + userDestination);
-            messagingTemplate.convertAndSendToUser(chatMessage.getReceiverId(), "/queue/messages", savedMessage);
+            broadcaster.sendToUser(chatMessage.getReceiverId(), "/queue/messages", encoded);
         }
     }
 
     @MessageMapping("/chat.addUser")
-    public void addUser(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
-        headerAccessor.getSessionAttributes().put("username", chatMessage.getSenderId());
+    public void addUser(@Payload PresenceEvent event, SimpMessageHeaderAccessor headerAccessor, StompPrincipal user) {
+        headerAccessor.getSessionAttributes().put("username", user.username());
         
-        chatMessage.setType(ChatMessage.MessageType.JOIN);
-        String destination = "/topic/room." + chatMessage.getChatRoomId();
-        messagingTemplate.convertAndSend(destination, chatMessage);
+        String destination = "/topic/room." + event.chatRoomId();
+        roomExecutor.execute(event.chatRoomId(), () ->
+            broadcaster.convertAndSend(destination, new PresenceEvent(ChatMessage.MessageType.JOIN, event.chatRoomId(), user.userId())));
     }
 
+    // Typing frames only update in-memory state; TypingTracker broadcasts throttled snapshots per room
     @MessageMapping("/chat.typing")
-    public void typing(@Payload ChatMessage chatMessage) {
-        chatMessage.setType(ChatMessage.MessageType.TYPING);
-        messagingTemplate.convertAndSend("/topic/room." + chatMessage.getChatRoomId(), chatMessage);
+    public void typing(@Payload PresenceEvent event, StompPrincipal user) {
+        typingTracker.typing(event.chatRoomId(), user.userId());
     }
 
     @MessageMapping("/chat.stopTyping")
-    public void stopTyping(@Payload ChatMessage chatMessage) {
-        chatMessage.setType(ChatMessage.MessageType.STOP_TYPING);
-        messagingTemplate.convertAndSend("/topic/room." + chatMessage.getChatRoomId(), chatMessage);
+    public void stopTyping(@Payload PresenceEvent event, StompPrincipal user) {
+        typingTracker.stopTyping(event.chatRoomId(), user.userId());
     }
 
     @MessageMapping("/chat.seen")
-    public void markAsSeen(@Payload ChatMessage chatMessage) {
-        String roomId = chatMessage.getChatRoomId();
-        String userId = chatMessage.getSenderId();
-        
-        chatService.markMessagesAsSeen(roomId, userId);
-        
-        // Notify others in the room that messages have been seen
-        chatMessage.setType(ChatMessage.MessageType.SEEN);
-        messagingTemplate.convertAndSend("/topic/room." + roomId, chatMessage);
+    public void markAsSeen(@Payload ReceiptEvent event, StompPrincipal user) {
+        roomExecutor.execute(event.chatRoomId(), () -> {
+            ReceiptResult result = chatService.markMessagesAsSeen(event.chatRoomId(), user.userId(), event.messageId());
+
+            // Notify others in the room that messages up to the high-water mark have been seen
+            broadcastReceipt(ChatMessage.MessageType.SEEN, event.chatRoomId(), user, result);
+        });
     }
 
     @MessageMapping("/chat.delivered")
-    public void markAsDelivered(@Payload ChatMessage chatMessage) {
-        String roomId = chatMessage.getChatRoomId();
-        String userId = chatMessage.getSenderId();
-        
-        chatService.markRoomMessagesAsDelivered(roomId, userId);
-        
-        // Notify sender that messages have been delivered
-        ChatMessage deliveryReceipt = new ChatMessage();
-        deliveryReceipt.setType(ChatMessage.MessageType.DELIVERED);
-        deliveryReceipt.setSenderId(userId);
-        deliveryReceipt.setChatRoomId(roomId);
-        
-        messagingTemplate.convertAndSend("/topic/room." + roomId, deliveryReceipt);
+    public void markAsDelivered(@Payload ReceiptEvent event, StompPrincipal user) {
+        roomExecutor.execute(event.chatRoomId(), () -> {
+            ReceiptResult result = chatService.markRoomMessagesAsDelivered(event.chatRoomId(), user.userId(), event.messageId());
+
+            // Notify sender that messages up to the high-water mark have been delivered
+            broadcastReceipt(ChatMessage.MessageType.DELIVERED, event.chatRoomId(), user, result);
+        });
     }
 
     @MessageMapping("/chat.read")
-    public void markAsRead(@Payload ChatMessage chatMessage) {
-        String roomId = chatMessage.getChatRoomId();
-        String userId = chatMessage.getSenderId();
-        
-        chatService.markRoomMessagesAsRead(roomId, userId);
-        
-        // Notify sender that messages have been read
-        ChatMessage readReceipt = new ChatMessage();
-        readReceipt.setType(ChatMessage.MessageType.READ);
-        readReceipt.setSenderId(userId);
-        readReceipt.setChatRoomId(roomId);
-        
-        messagingTemplate.convertAndSend("/topic/room." + roomId, readReceipt);
+    public void markAsRead(@Payload ReceiptEvent event, StompPrincipal user) {
+        roomExecutor.execute(event.chatRoomId(), () -> {
+            ReceiptResult result = chatService.markRoomMessagesAsRead(event.chatRoomId(), user.userId(), event.messageId());
+
+            // Notify sender that messages up to the high-water mark have been read
+            broadcastReceipt(ChatMessage.MessageType.READ, event.chatRoomId(), user, result);
+        });
+    }
+
+    private void broadcastReceipt(ChatMessage.MessageType type, String roomId, StompPrincipal user, ReceiptResult result) {
+        if (result.getModifiedCount() == 0) {
+            return;
+        }
+        ReceiptEvent receipt = new ReceiptEvent(type, roomId, user.userId(), null, result.getHighWaterMark());
+        broadcaster.convertAndSend("/topic/room." + roomId, receipt);
     }
 
     @MessageMapping("/chat.reaction")
-    public void handleReaction(@Payload ReactionRequest reactionRequest) {
+    public void handleReaction(@Payload ReactionRequest reactionRequest, StompPrincipal user) {
+        // Messages of unknown rooms still get a lane of their own, so toggles on one message keep their order
+        String laneKey = messageRoomLookup.findRoomId(reactionRequest.getMessageId());
+        roomExecutor.execute(laneKey != null ? laneKey : reactionRequest.getMessageId(), () -> applyAndRecordReaction(reactionRequest, user));
+    }
+
+    private void applyAndRecordReaction(ReactionRequest reactionRequest, StompPrincipal user) {
         try {
-            // Toggle reaction (add if not exists, remove if exists)
-            reactionService.toggleReaction(
-                reactionRequest.getMessageId(),
-                reactionRequest.getUserId(),
-                reactionRequest.getUsername(),
-                reactionRequest.getEmoji()
-            );
-            
-            // Get updated reaction counts
-            Map<String, Integer> reactionCounts = reactionService.getReactionCounts(reactionRequest.getMessageId());
+            ReactionResult result = applyReaction(reactionRequest, user);
+            if (result == null) {
+                return; // nothing changed, e.g. a repeated "add"
+            }
             
-            // Broadcast reaction update to all users in the room
-            Map<String, Object> reactionUpdate = new HashMap<>();
-            reactionUpdate.put("type", "REACTION");
-            reactionUpdate.put("messageId", reactionRequest.getMessageId());
-            reactionUpdate.put("userId", reactionRequest.getUserId());
-            reactionUpdate.put("emoji", reactionRequest.getEmoji());
-            reactionUpdate.put("action", reactionRequest.getAction());
-            reactionUpdate.put("reactions", reactionCounts);
-            
-            // We need to get the chatRoomId from the message
-            // For now, we'll broadcast to a general reactions topic
-            messagingTemplate.convertAndSend("/topic/reactions/" + reactionRequest.getMessageId(), reactionUpdate);
+            // Updates go to the owning room's topic, coalesced per room by the broadcaster
+            String roomId = result.getChatRoomId() != null
+                ? result.getChatRoomId()
+                : messageRoomLookup.findRoomId(result.getMessageId());
+            if (roomId != null) {
+                reactionBroadcaster.record(roomId, result.getMessageId(), result.getReactions());
+            }
             
         } catch (Exception e) {
             System.err.println("Error handling reaction: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private ReactionResult applyReaction(ReactionRequest request, StompPrincipal user) {
+        String action = request.getAction() != null ? request.getAction().toLowerCase() : "toggle";
+        switch (action) {
+            case "add":
+                return reactionService.addReaction(request.getMessageId(), user.userId(), user.username(), request.getEmoji());
+            case "remove":
+                return reactionService.removeReaction(request.getMessageId(), user.userId(), request.getEmoji());
+            default:
+                return reactionService.toggleReaction(request.getMessageId(), user.userId(), user.username(), request.getEmoji());
+        }
+    }
+}
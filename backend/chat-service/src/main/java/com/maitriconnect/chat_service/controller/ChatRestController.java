@@ -1,13 +1,21 @@
 package com.maitriconnect.chat_service.controller;
 
+import com.maitriconnect.chat_service.config.StompPrincipal;
 import com.maitriconnect.chat_service.dto.ChatRoomResponse;
 import com.maitriconnect.chat_service.dto.CreateRoomRequest;
+import com.maitriconnect.chat_service.dto.InboxBadgeResponse;
+import com.maitriconnect.chat_service.dto.MessagePageResponse;
+import com.maitriconnect.chat_service.dto.MessageSearchResponse;
 import com.maitriconnect.chat_service.dto.SendMessageRequest;
+import com.maitriconnect.chat_service.dto.SyncResponse;
 import com.maitriconnect.chat_service.model.ChatMessage;
 import com.maitriconnect.chat_service.model.ChatRoom;
 import com.maitriconnect.chat_service.service.ChatService;
+import com.maitriconnect.chat_service.service.SyncService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -19,16 +27,37 @@ public class ChatRestController {
     @Autowired
     private ChatService chatService;
 
+    @Autowired
+    private SyncService syncService;
+
     // Health check endpoint
     @GetMapping("/test")
     public ResponseEntity<String> test() {
         return ResponseEntity.ok("Chat REST API is working!");
     }
 
+    // Paged room history, newest first. Pass olderCursor as "before" to scroll back,
+    // or newerCursor as "after" to fetch what arrived since the page was loaded.
+    // afterSeq instead returns the messages following a room sequence number, to fill a gap.
+    // Only for members of the room; statuses are as the caller sees them.
     @GetMapping("/rooms/{roomId}/messages")
-    public ResponseEntity<List<ChatMessage>> getRoomMessages(@PathVariable String roomId) {
-        List<ChatMessage> messages = chatService.getMessagesByRoom(roomId);
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<?> getRoomMessages(@PathVariable String roomId,
+                                             @AuthenticationPrincipal StompPrincipal user,
+                                             @RequestParam(required = false) String before,
+                                             @RequestParam(required = false) String after,
+                                             @RequestParam(required = false) Long afterSeq,
+                                             @RequestParam(required = false) Integer limit) {
+        if (user == null || !chatService.isRoomMember(roomId, user.userId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            MessagePageResponse page = afterSeq != null
+                ? chatService.getRoomMessagesAfterSeq(roomId, user.userId(), afterSeq, limit)
+                : chatService.getRoomMessagePage(roomId, user.userId(), before, after, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @PostMapping("/rooms")
@@ -53,9 +82,16 @@ public class ChatRestController {
 
     // Get direct messages between two users
     @GetMapping("/messages/direct")
-    public ResponseEntity<List<ChatMessage>> getDirectMessages(@RequestParam String user1, @RequestParam String user2) {
-        List<ChatMessage> messages = chatService.getDirectMessages(user1, user2);
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<?> getDirectMessages(@RequestParam String user1, @RequestParam String user2,
+                                               @RequestParam(required = false) String before,
+                                               @RequestParam(required = false) String after,
+                                               @RequestParam(required = false) Integer limit) {
+        try {
+            MessagePageResponse page = chatService.getDirectMessagePage(user1, user2, before, after, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     // Mark message as delivered/seen
@@ -77,6 +113,55 @@ public class ChatRestController {
         return ResponseEntity.ok(count);
     }
 
+    // Full-text search across the user's rooms (or one room), newest first; pass nextCursor as "cursor"
+    // for the next page. 503 means the server is shedding search load and the client should retry.
+    @GetMapping("/users/{userId}/search")
+    public ResponseEntity<?> searchMessages(@PathVariable String userId,
+                                            @AuthenticationPrincipal StompPrincipal user,
+                                            @RequestParam String q,
+                                            @RequestParam(required = false) String roomId,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(required = false) Integer limit) {
+        if (!isCaller(user, userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            MessageSearchResponse results = chatService.searchMessages(userId, q, roomId, cursor, limit);
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    // Changes in all of the user's rooms since the token from the previous sync. Reconnecting clients
+    // call this instead of reloading room lists and histories; without a token it only returns one.
+    @GetMapping("/users/{userId}/sync")
+    public ResponseEntity<SyncResponse> sync(@PathVariable String userId,
+                                             @AuthenticationPrincipal StompPrincipal user,
+                                             @RequestParam(required = false) String since) {
+        if (!isCaller(user, userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(syncService.sync(userId, since));
+    }
+
+    // Unread counts for all of the user's rooms plus the total, for the inbox badge
+    @GetMapping("/users/{userId}/inbox")
+    public ResponseEntity<InboxBadgeResponse> getInbox(@PathVariable String userId,
+                                                       @AuthenticationPrincipal StompPrincipal user) {
+        if (!isCaller(user, userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(chatService.getInbox(userId));
+    }
+
+    // Per-user endpoints only serve the user the request's JWT belongs to
+    private boolean isCaller(StompPrincipal user, String userId) {
+        return user != null && user.userId() != null && user.userId().equals(userId);
+    }
+
     // Send message via REST (for offline users)
     @PostMapping("/messages")
     public ResponseEntity<ChatMessage> sendMessage(@RequestBody SendMessageRequest request) {
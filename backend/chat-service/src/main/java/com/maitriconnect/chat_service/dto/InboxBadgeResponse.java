@@ -0,0 +1,22 @@
+package com.maitriconnect.chat_service.dto;
+
+import java.util.Map;
+
+public class InboxBadgeResponse {
+    private long total;
+    private Map<String, Long> rooms; // roomId -> unread count, rooms with nothing unread are omitted
+
+    public InboxBadgeResponse() {}
+
+    public InboxBadgeResponse(long total, Map<String, Long> rooms) {
+        this.total = total;
+        this.rooms = rooms;
+    }
+
+    // Getters and Setters
+    public long getTotal() { return total; }
+    public void setTotal(long total) { this.total = total; }
+
+    public Map<String, Long> getRooms() { return rooms; }
+    public void setRooms(Map<String, Long> rooms) { this.rooms = rooms; }
+}
@@ -0,0 +1,34 @@
+package com.maitriconnect.chat_service.dto;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+
+import java.util.List;
+
+public class MessagePageResponse {
+    private List<ChatMessage> messages; // newest first
+    private String olderCursor; // pass as "before" to load the previous page
+    private String newerCursor; // pass as "after" to load messages that arrived since
+    private boolean hasMore; // more messages exist in the direction that was requested
+
+    public MessagePageResponse() {}
+
+    public MessagePageResponse(List<ChatMessage> messages, String olderCursor, String newerCursor, boolean hasMore) {
+        this.messages = messages;
+        this.olderCursor = olderCursor;
+        this.newerCursor = newerCursor;
+        this.hasMore = hasMore;
+    }
+
+    // Getters and Setters
+    public List<ChatMessage> getMessages() { return messages; }
+    public void setMessages(List<ChatMessage> messages) { this.messages = messages; }
+
+    public String getOlderCursor() { return olderCursor; }
+    public void setOlderCursor(String olderCursor) { this.olderCursor = olderCursor; }
+
+    public String getNewerCursor() { return newerCursor; }
+    public void setNewerCursor(String newerCursor) { this.newerCursor = newerCursor; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+}
@@ -0,0 +1,29 @@
+package com.maitriconnect.chat_service.dto;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+
+import java.util.List;
+
+public class MessageSearchResponse {
+    private List<ChatMessage> messages; // matching messages, newest first
+    private String nextCursor; // pass as "cursor" to load the next page of results
+    private boolean hasMore;
+
+    public MessageSearchResponse() {}
+
+    public MessageSearchResponse(List<ChatMessage> messages, String nextCursor, boolean hasMore) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    // Getters and Setters
+    public List<ChatMessage> getMessages() { return messages; }
+    public void setMessages(List<ChatMessage> messages) { this.messages = messages; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+}
@@ -0,0 +1,13 @@
+package com.maitriconnect.chat_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.maitriconnect.chat_service.model.ChatMessage;
+
+// Wire shape for JOIN / TYPING / STOP_TYPING frames: just who, where and what (RESYNC has no sender)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PresenceEvent(ChatMessage.MessageType type, String chatRoomId, String senderId) {
+
+    public PresenceEvent withType(ChatMessage.MessageType newType) {
+        return new PresenceEvent(newType, chatRoomId, senderId);
+    }
+}
@@ -0,0 +1,19 @@
+package com.maitriconnect.chat_service.dto;
+
+import java.util.Map;
+
+public class ReactionResult {
+    private final String messageId;
+    private final String chatRoomId;
+    private final Map<String, Integer> reactions; // emoji -> count after the change
+
+    public ReactionResult(String messageId, String chatRoomId, Map<String, Integer> reactions) {
+        this.messageId = messageId;
+        this.chatRoomId = chatRoomId;
+        this.reactions = reactions;
+    }
+
+    public String getMessageId() { return messageId; }
+    public String getChatRoomId() { return chatRoomId; }
+    public Map<String, Integer> getReactions() { return reactions; }
+}
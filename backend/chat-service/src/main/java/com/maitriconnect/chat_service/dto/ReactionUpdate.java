@@ -0,0 +1,17 @@
+package com.maitriconnect.chat_service.dto;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+
+import java.util.List;
+import java.util.Map;
+
+// Coalesced reaction counts for one room, published by ReactionBroadcaster
+public record ReactionUpdate(ChatMessage.MessageType type, String chatRoomId, List<Item> updates) {
+
+    public ReactionUpdate(String chatRoomId, List<Item> updates) {
+        this(ChatMessage.MessageType.REACTION, chatRoomId, updates);
+    }
+
+    public record Item(String messageId, Map<String, Integer> reactions) {
+    }
+}
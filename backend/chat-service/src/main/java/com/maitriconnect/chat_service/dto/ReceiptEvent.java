@@ -0,0 +1,14 @@
+package com.maitriconnect.chat_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.maitriconnect.chat_service.model.ChatMessage;
+
+import java.time.LocalDateTime;
+
+// Wire shape for SEEN / DELIVERED / READ frames. Inbound receipts name messageId, the newest message
+// of the room the client has received or read; upTo is only set on outbound receipts and is the
+// watermark position the receipt covers.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ReceiptEvent(ChatMessage.MessageType type, String chatRoomId, String senderId, String messageId,
+                           LocalDateTime upTo) {
+}
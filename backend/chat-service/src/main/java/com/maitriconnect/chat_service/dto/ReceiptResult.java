@@ -0,0 +1,16 @@
+package com.maitriconnect.chat_service.dto;
+
+import java.time.LocalDateTime;
+
+public class ReceiptResult {
+    private final long modifiedCount;
+    private final LocalDateTime highWaterMark; // every message up to this timestamp is covered by the receipt
+
+    public ReceiptResult(long modifiedCount, LocalDateTime highWaterMark) {
+        this.modifiedCount = modifiedCount;
+        this.highWaterMark = highWaterMark;
+    }
+
+    public long getModifiedCount() { return modifiedCount; }
+    public LocalDateTime getHighWaterMark() { return highWaterMark; }
+}
@@ -0,0 +1,59 @@
+package com.maitriconnect.chat_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.RoomReadState;
+
+import java.util.List;
+
+// Everything in the user's rooms that changed since the client's sync token. Items can repeat across
+// consecutive syncs, so clients merge them by id. Empty sections are left out of the JSON.
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class SyncResponse {
+    private String token; // pass as "since" on the next sync
+    private boolean resetRequired; // token missing or too old: reload rooms and histories, then sync with token
+    private boolean hasMore; // messages were cut off at the limit; sync again with token right away
+    private List<ChatRoomResponse> rooms; // rooms created or with a newer last message
+    private List<ChatMessage> messages; // new messages, oldest first, with status for the user
+    private List<ReactionUpdate> reactions; // current counts of messages whose reactions changed, per room
+    private List<RoomReadState> receipts; // read and delivery watermarks that moved
+
+    public SyncResponse() {}
+
+    public SyncResponse(String token, boolean resetRequired, boolean hasMore, List<ChatRoomResponse> rooms,
+                        List<ChatMessage> messages, List<ReactionUpdate> reactions, List<RoomReadState> receipts) {
+        this.token = token;
+        this.resetRequired = resetRequired;
+        this.hasMore = hasMore;
+        this.rooms = rooms;
+        this.messages = messages;
+        this.reactions = reactions;
+        this.receipts = receipts;
+    }
+
+    public static SyncResponse reset(String token) {
+        return new SyncResponse(token, true, false, List.of(), List.of(), List.of(), List.of());
+    }
+
+    // Getters and Setters
+    public String getToken() { return token; }
+    public void setToken(String token) { this.token = token; }
+
+    public boolean isResetRequired() { return resetRequired; }
+    public void setResetRequired(boolean resetRequired) { this.resetRequired = resetRequired; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+
+    public List<ChatRoomResponse> getRooms() { return rooms; }
+    public void setRooms(List<ChatRoomResponse> rooms) { this.rooms = rooms; }
+
+    public List<ChatMessage> getMessages() { return messages; }
+    public void setMessages(List<ChatMessage> messages) { this.messages = messages; }
+
+    public List<ReactionUpdate> getReactions() { return reactions; }
+    public void setReactions(List<ReactionUpdate> reactions) { this.reactions = reactions; }
+
+    public List<RoomReadState> getReceipts() { return receipts; }
+    public void setReceipts(List<RoomReadState> receipts) { this.receipts = receipts; }
+}
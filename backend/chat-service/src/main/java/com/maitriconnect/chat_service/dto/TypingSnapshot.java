@@ -0,0 +1,13 @@
+package com.maitriconnect.chat_service.dto;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+
+import java.util.List;
+
+// Everyone currently typing in a room, published by TypingTracker
+public record TypingSnapshot(ChatMessage.MessageType type, String chatRoomId, List<String> typingUserIds) {
+
+    public TypingSnapshot(String chatRoomId, List<String> typingUserIds) {
+        this(ChatMessage.MessageType.TYPING, chatRoomId, typingUserIds);
+    }
+}
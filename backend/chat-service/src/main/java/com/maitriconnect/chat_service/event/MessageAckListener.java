@@ -0,0 +1,45 @@
+package com.maitriconnect.chat_service.event;
+
+import com.maitriconnect.chat_service.cluster.ClusterBroadcaster;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Tells senders which of their messages are now durable, one ACK frame per sender and room per batch
+@Component
+public class MessageAckListener {
+
+    @Autowired
+    private ClusterBroadcaster broadcaster;
+
+    @Async
+    @EventListener
+    public void onMessagesPersisted(MessagesPersistedEvent event) {
+        Map<String, Map<String, List<String>>> idsBySenderAndRoom = new LinkedHashMap<>();
+        for (ChatMessage message : event.getMessages()) {
+            if (message.getSenderId() == null) {
+                continue;
+            }
+            idsBySenderAndRoom
+                .computeIfAbsent(message.getSenderId(), sender -> new LinkedHashMap<>())
+                .computeIfAbsent(message.getChatRoomId(), room -> new ArrayList<>())
+                .add(message.getId());
+        }
+
+        idsBySenderAndRoom.forEach((senderId, rooms) -> rooms.forEach((roomId, messageIds) -> {
+            Map<String, Object> ack = new HashMap<>();
+            ack.put("type", "ACK");
+            ack.put("chatRoomId", roomId);
+            ack.put("messageIds", messageIds);
+            broadcaster.convertAndSendToUser(senderId, "/queue/acks", ack);
+        }));
+    }
+}
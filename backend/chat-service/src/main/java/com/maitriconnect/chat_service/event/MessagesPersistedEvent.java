@@ -0,0 +1,22 @@
+package com.maitriconnect.chat_service.event;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Published by the write-behind queue once a batch of messages is durably stored in chat_messages
+public class MessagesPersistedEvent {
+    private final List<ChatMessage> messages;
+    private final LocalDateTime persistedAt;
+
+    public MessagesPersistedEvent(List<ChatMessage> messages, LocalDateTime persistedAt) {
+        this.messages = List.copyOf(messages);
+        this.persistedAt = persistedAt;
+    }
+
+    public List<ChatMessage> getMessages() { return messages; }
+
+    // The persistedAt stamped on every message of the batch before it was written; listeners may run later
+    public LocalDateTime getPersistedAt() { return persistedAt; }
+}
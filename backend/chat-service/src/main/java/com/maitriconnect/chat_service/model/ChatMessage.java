@@ -17,6 +17,7 @@ public class ChatMessage {
     private String content;
     private String chatRoomId;
     private LocalDateTime timestamp;
+    private Long seq; // per-room order, assigned when the service accepts the message; null before that
     private MessageType type;
     private MessageStatus status = MessageStatus.SENT;
     
@@ -25,9 +26,11 @@ public class ChatMessage {
     private LocalDateTime deliveredAt;
     private LocalDateTime readAt;
     private Map<String, Integer> reactions = new HashMap<>(); // emoji -> count
+    private LocalDateTime reactionsUpdatedAt; // last change to reactions, for delta sync
+    private LocalDateTime persistedAt; // set right before the message is written, for unread recounts
 
     public enum MessageType {
-        CHAT, JOIN, LEAVE, TYPING, STOP_TYPING, SEEN, FILE, DELIVERED, READ, REACTION
+        CHAT, JOIN, LEAVE, TYPING, STOP_TYPING, SEEN, FILE, DELIVERED, READ, REACTION, RESYNC
     }
 
     public enum MessageStatus {
@@ -48,6 +51,25 @@ public class ChatMessage {
         this.timestamp = LocalDateTime.now();
     }
 
+    // Copy with its own attachment list and reaction map, e.g. for per-viewer status
+    public ChatMessage(ChatMessage other) {
+        this.id = other.id;
+        this.senderId = other.senderId;
+        this.receiverId = other.receiverId;
+        this.content = other.content;
+        this.chatRoomId = other.chatRoomId;
+        this.timestamp = other.timestamp;
+        this.seq = other.seq;
+        this.type = other.type;
+        this.status = other.status;
+        this.fileAttachments = other.fileAttachments != null ? new ArrayList<>(other.fileAttachments) : new ArrayList<>();
+        this.deliveredAt = other.deliveredAt;
+        this.readAt = other.readAt;
+        this.reactions = other.reactions != null ? new HashMap<>(other.reactions) : new HashMap<>();
+        this.reactionsUpdatedAt = other.reactionsUpdatedAt;
+        this.persistedAt = other.persistedAt;
+    }
+
     // Getters and Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -67,6 +89,9 @@ public class ChatMessage {
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
+
     public MessageType getType() { return type; }
     public void setType(MessageType type) { this.type = type; }
 
@@ -84,4 +109,10 @@ public class ChatMessage {
 
     public Map<String, Integer> getReactions() { return reactions; }
     public void setReactions(Map<String, Integer> reactions) { this.reactions = reactions; }
+
+    public LocalDateTime getReactionsUpdatedAt() { return reactionsUpdatedAt; }
+    public void setReactionsUpdatedAt(LocalDateTime reactionsUpdatedAt) { this.reactionsUpdatedAt = reactionsUpdatedAt; }
+
+    public LocalDateTime getPersistedAt() { return persistedAt; }
+    public void setPersistedAt(LocalDateTime persistedAt) { this.persistedAt = persistedAt; }
 }
\ No newline at end of file
@@ -17,6 +17,9 @@ public class ChatRoom {
     private ChatRoomType type;
     private String lastMessage;
     private LocalDateTime lastMessageTime;
+    // Only set on DIRECT rooms: the two participant ids, sorted and joined, so a pair maps to one room
+    // (unique sparse index direct_key)
+    private String directKey;
 
     public enum ChatRoomType {
         DIRECT, GROUP
@@ -35,6 +38,19 @@ public class ChatRoom {
         this.createdAt = LocalDateTime.now();
     }
 
+    // Copy with its own participant set, e.g. for a cached snapshot
+    public ChatRoom(ChatRoom other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.participants = other.participants != null ? new HashSet<>(other.participants) : new HashSet<>();
+        this.createdAt = other.createdAt;
+        this.createdBy = other.createdBy;
+        this.type = other.type;
+        this.lastMessage = other.lastMessage;
+        this.lastMessageTime = other.lastMessageTime;
+        this.directKey = other.directKey;
+    }
+
     // Getters and Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -59,4 +75,11 @@ public class ChatRoom {
 
     public LocalDateTime getLastMessageTime() { return lastMessageTime; }
     public void setLastMessageTime(LocalDateTime lastMessageTime) { this.lastMessageTime = lastMessageTime; }
+
+    public String getDirectKey() { return directKey; }
+    public void setDirectKey(String directKey) { this.directKey = directKey; }
+
+    public static String directKeyFor(String user1, String user2) {
+        return user1.compareTo(user2) <= 0 ? user1 + ":" + user2 : user2 + ":" + user1;
+    }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.LocalDateTime;
 
 @Document(collection = "message_reactions")
+// One reaction per user and emoji (unique index message_user_emoji); ReactionService relies on this to make toggles atomic
 public class MessageReaction {
     @Id
     private String id;
@@ -0,0 +1,58 @@
+package com.maitriconnect.chat_service.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+// Per (room, user) read and delivery watermarks. Message READ/DELIVERED status is derived from these
+// at query time instead of being written onto every message.
+@Document(collection = "room_read_state")
+public class RoomReadState {
+    @Id
+    private String id; // roomId:userId, so receipts can upsert by _id
+    private String roomId;
+    private String userId;
+    private LocalDateTime lastReadAt; // every message in the room up to this position has been read
+    private LocalDateTime lastDeliveredAt; // every message up to this position has been delivered
+    private LocalDateTime updatedAt;
+
+    public RoomReadState() {}
+
+    public RoomReadState(String roomId, String userId) {
+        this.id = idFor(roomId, userId);
+        this.roomId = roomId;
+        this.userId = userId;
+    }
+
+    public static String idFor(String roomId, String userId) {
+        return roomId + ":" + userId;
+    }
+
+    public boolean hasRead(LocalDateTime timestamp) {
+        return lastReadAt != null && timestamp != null && !timestamp.isAfter(lastReadAt);
+    }
+
+    public boolean hasReceived(LocalDateTime timestamp) {
+        return hasRead(timestamp)
+            || (lastDeliveredAt != null && timestamp != null && !timestamp.isAfter(lastDeliveredAt));
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getRoomId() { return roomId; }
+    public void setRoomId(String roomId) { this.roomId = roomId; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public LocalDateTime getLastReadAt() { return lastReadAt; }
+    public void setLastReadAt(LocalDateTime lastReadAt) { this.lastReadAt = lastReadAt; }
+
+    public LocalDateTime getLastDeliveredAt() { return lastDeliveredAt; }
+    public void setLastDeliveredAt(LocalDateTime lastDeliveredAt) { this.lastDeliveredAt = lastDeliveredAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,21 @@
+package com.maitriconnect.chat_service.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Per-room message sequence counter; leased holds the highest sequence handed out to any node
+@Document(collection = "room_sequences")
+public class RoomSequence {
+    @Id
+    private String id; // roomId
+    private long leased;
+
+    public RoomSequence() {}
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public long getLeased() { return leased; }
+    public void setLeased(long leased) { this.leased = leased; }
+}
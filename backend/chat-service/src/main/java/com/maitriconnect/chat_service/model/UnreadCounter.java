@@ -0,0 +1,42 @@
+package com.maitriconnect.chat_service.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+// Maintained unread count per (user, room): incremented when messages are persisted, recounted on read
+@Document(collection = "unread_counters")
+public class UnreadCounter {
+    @Id
+    private String id; // userId:roomId
+    private String userId;
+    private String roomId;
+    private long count;
+    private LocalDateTime updatedAt;
+    private LocalDateTime recountedAt; // batches persisted before this are already part of count
+
+    public UnreadCounter() {}
+
+    public static String idFor(String userId, String roomId) {
+        return userId + ":" + roomId;
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getRoomId() { return roomId; }
+    public void setRoomId(String roomId) { this.roomId = roomId; }
+
+    public long getCount() { return count; }
+    public void setCount(long count) { this.count = count; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    public LocalDateTime getRecountedAt() { return recountedAt; }
+    public void setRecountedAt(LocalDateTime recountedAt) { this.recountedAt = recountedAt; }
+}
@@ -0,0 +1,27 @@
+package com.maitriconnect.chat_service.repository;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.util.MessageCursor;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface ChatMessageRepositoryCustom {
+    // Keyset pages ordered newest first; fetches at most limit documents regardless of history size.
+    // Room pages follow the room's sequence, direct pages the message timestamps.
+    List<ChatMessage> findRoomPage(String chatRoomId, MessageCursor before, MessageCursor after, int limit);
+
+    List<ChatMessage> findDirectPage(String user1, String user2, MessageCursor before, MessageCursor after, int limit);
+
+    // Messages in any of the rooms at or after since, oldest first, for delta sync
+    List<ChatMessage> findRoomsSince(Collection<String> chatRoomIds, LocalDateTime since, int limit);
+
+    // Id, room and reaction counts of messages in any of the rooms whose reactions changed at or after since
+    List<ChatMessage> findReactionsChangedSince(Collection<String> chatRoomIds, LocalDateTime since, int limit);
+
+    // Every message with a timestamp at or after since, oldest first, with only the fields search indexes.
+    // The caller must close the stream.
+    Stream<ChatMessage> streamSince(LocalDateTime since);
+}
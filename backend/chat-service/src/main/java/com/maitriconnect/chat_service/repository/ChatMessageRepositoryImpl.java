@@ -0,0 +1,121 @@
+package com.maitriconnect.chat_service.repository;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.util.MessageCursor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ChatMessageRepositoryImpl implements ChatMessageRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public List<ChatMessage> findRoomPage(String chatRoomId, MessageCursor before, MessageCursor after, int limit) {
+        return findPage(Criteria.where("chatRoomId").is(chatRoomId), before, after, limit, true);
+    }
+
+    @Override
+    public List<ChatMessage> findDirectPage(String user1, String user2, MessageCursor before, MessageCursor after, int limit) {
+        Criteria pair = new Criteria().orOperator(
+            Criteria.where("senderId").is(user1).and("receiverId").is(user2),
+            Criteria.where("senderId").is(user2).and("receiverId").is(user1));
+        // A pair's messages may span rooms (and so sequences), so direct pages stay in time order
+        return findPage(pair, before, after, limit, false);
+    }
+
+    @Override
+    public List<ChatMessage> findRoomsSince(Collection<String> chatRoomIds, LocalDateTime since, int limit) {
+        Query query = new Query(Criteria.where("chatRoomId").in(chatRoomIds).and("timestamp").gte(since))
+            .with(Sort.by(Sort.Direction.ASC, "timestamp", "_id"))
+            .limit(limit);
+        return mongoTemplate.find(query, ChatMessage.class);
+    }
+
+    @Override
+    public List<ChatMessage> findReactionsChangedSince(Collection<String> chatRoomIds, LocalDateTime since, int limit) {
+        Query query = new Query(Criteria.where("chatRoomId").in(chatRoomIds).and("reactionsUpdatedAt").gte(since))
+            .limit(limit);
+        query.fields().include("chatRoomId").include("reactions").include("reactionsUpdatedAt");
+        return mongoTemplate.find(query, ChatMessage.class);
+    }
+
+    @Override
+    public Stream<ChatMessage> streamSince(LocalDateTime since) {
+        Query query = new Query(since != null ? Criteria.where("timestamp").gte(since) : new Criteria())
+            .with(Sort.by(Sort.Direction.ASC, "timestamp", "_id"));
+        query.fields().include("chatRoomId").include("content").include("timestamp");
+        return mongoTemplate.stream(query, ChatMessage.class);
+    }
+
+    // bySeq orders by (seq, timestamp, _id): messages stored before sequences existed have none and
+    // sort as older than every sequenced message, among themselves by time as before
+    private List<ChatMessage> findPage(Criteria scope, MessageCursor before, MessageCursor after, int limit, boolean bySeq) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(scope);
+        if (before != null) {
+            criteria.add(bySeq ? olderThanBySeq(before) : olderThan(before));
+        }
+        if (after != null) {
+            criteria.add(bySeq ? newerThanBySeq(after) : newerThan(after));
+        }
+
+        // With only an "after" cursor we want the messages closest to it, so walk forward and flip the result
+        boolean ascending = after != null && before == null;
+        Sort.Direction direction = ascending ? Sort.Direction.ASC : Sort.Direction.DESC;
+
+        Sort sort = bySeq ? Sort.by(direction, "seq", "timestamp", "_id") : Sort.by(direction, "timestamp", "_id");
+        Query query = new Query(new Criteria().andOperator(criteria))
+            .with(sort)
+            .limit(limit);
+        List<ChatMessage> page = mongoTemplate.find(query, ChatMessage.class);
+        if (ascending) {
+            page = new ArrayList<>(page);
+            Collections.reverse(page);
+        }
+        return page;
+    }
+
+    private Criteria olderThanBySeq(MessageCursor cursor) {
+        if (cursor.getSeq() != null) {
+            return new Criteria().orOperator(Criteria.where("seq").lt(cursor.getSeq()), Criteria.where("seq").is(null));
+        }
+        return new Criteria().andOperator(Criteria.where("seq").is(null), olderThan(cursor));
+    }
+
+    private Criteria newerThanBySeq(MessageCursor cursor) {
+        if (cursor.getSeq() != null) {
+            return Criteria.where("seq").gt(cursor.getSeq());
+        }
+        return new Criteria().orOperator(Criteria.where("seq").ne(null),
+            new Criteria().andOperator(Criteria.where("seq").is(null), newerThan(cursor)));
+    }
+
+    private Criteria olderThan(MessageCursor cursor) {
+        return new Criteria().orOperator(
+            Criteria.where("timestamp").lt(cursor.getTimestamp()),
+            Criteria.where("timestamp").is(cursor.getTimestamp()).and("_id").lt(idValue(cursor.getId())));
+    }
+
+    private Criteria newerThan(MessageCursor cursor) {
+        return new Criteria().orOperator(
+            Criteria.where("timestamp").gt(cursor.getTimestamp()),
+            Criteria.where("timestamp").is(cursor.getTimestamp()).and("_id").gt(idValue(cursor.getId())));
+    }
+
+    // Message IDs are stored as ObjectIds, and range operators on _id must compare like with like
+    private Object idValue(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+}
@@ -2,8 +2,8 @@ package com.maitriconnect.chat_service.repository;
 
 import com.maitriconnect.chat_service.model.ChatRoom;
 import org.springframework.data.mongodb.repository.MongoRepository;
-import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,10 +11,12 @@ import java.util.Optional;
 public interface ChatRoomRepository extends MongoRepository<ChatRoom, String> {
     List<ChatRoom> findByParticipantsContaining(String userId);
     
-    // Find direct chat room between two users
-    @Query("{ 'type': 'DIRECT', 'participants': { $all: [?0, ?1], $size: 2 } }")
-    Optional<ChatRoom> findDirectChatRoom(String user1, String user2);
+    // Find direct chat room between two users by their sorted pair key (see ChatRoom.directKeyFor)
+    Optional<ChatRoom> findByDirectKey(String directKey);
     
     // Find group rooms for a user
     List<ChatRoom> findByParticipantsContainingAndType(String userId, ChatRoom.ChatRoomType type);
+
+    // Rooms a user was added to since the given time, for delta sync
+    List<ChatRoom> findByParticipantsContainingAndCreatedAtGreaterThanEqual(String userId, LocalDateTime since);
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.maitriconnect.chat_service.repository;
+
+import com.maitriconnect.chat_service.model.RoomReadState;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface RoomReadStateRepository extends MongoRepository<RoomReadState, String> {
+    List<RoomReadState> findByRoomId(String roomId);
+    List<RoomReadState> findByUserId(String userId);
+    List<RoomReadState> findByRoomIdIn(Collection<String> roomIds);
+
+    // Receipts in any of the rooms that moved since the given time, for delta sync
+    List<RoomReadState> findByRoomIdInAndUpdatedAtGreaterThanEqual(Collection<String> roomIds, LocalDateTime since);
+}
@@ -0,0 +1,12 @@
+package com.maitriconnect.chat_service.repository;
+
+import com.maitriconnect.chat_service.model.UnreadCounter;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface UnreadCounterRepository extends MongoRepository<UnreadCounter, String> {
+    List<UnreadCounter> findByUserId(String userId);
+}
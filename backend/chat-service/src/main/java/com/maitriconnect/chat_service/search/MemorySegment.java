@@ -0,0 +1,126 @@
+package com.maitriconnect.chat_service.search;
+
+import org.bson.types.ObjectId;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+// The segment new messages go into. Postings are kept compressed while they grow; once the segment is
+// large or old enough it is frozen and written out as a SegmentFile.
+final class MemorySegment implements SearchSegment {
+
+    static final int ID_BYTES = 12;
+
+    private final int baseDoc;
+    private final long createdAt = System.nanoTime();
+    private final Map<String, Map<String, PostingList.Builder>> rooms = new HashMap<>();
+    private byte[] ids = new byte[ID_BYTES * 64];
+    private long[] timestamps = new long[64];
+    private int docCount;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+
+    MemorySegment(int baseDoc) {
+        this.baseDoc = baseDoc;
+    }
+
+    synchronized int add(ObjectId messageId, String roomId, long timestamp, Set<String> terms) {
+        int docId = baseDoc + docCount;
+        if (docCount == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, docCount * 2);
+            ids = Arrays.copyOf(ids, docCount * 2 * ID_BYTES);
+        }
+        System.arraycopy(messageId.toByteArray(), 0, ids, docCount * ID_BYTES, ID_BYTES);
+        timestamps[docCount] = timestamp;
+        docCount++;
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+
+        Map<String, PostingList.Builder> roomTerms = rooms.computeIfAbsent(roomId, id -> new HashMap<>());
+        for (String term : terms) {
+            roomTerms.computeIfAbsent(term, t -> new PostingList.Builder()).add(docId);
+        }
+        return docId;
+    }
+
+    synchronized int docCount() {
+        return docCount;
+    }
+
+    long ageNanos() {
+        return System.nanoTime() - createdAt;
+    }
+
+    @Override
+    public synchronized long minTimestamp() {
+        return minTimestamp;
+    }
+
+    @Override
+    public int baseDoc() {
+        return baseDoc;
+    }
+
+    @Override
+    public synchronized int endDoc() {
+        return baseDoc + docCount;
+    }
+
+    @Override
+    public synchronized long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    @Override
+    public synchronized int[] postings(String roomId, String term) {
+        Map<String, PostingList.Builder> roomTerms = rooms.get(roomId);
+        PostingList.Builder builder = roomTerms != null ? roomTerms.get(term) : null;
+        return builder != null ? PostingList.decode(builder.bytes(), 0, builder.length()) : null;
+    }
+
+    @Override
+    public synchronized String messageId(int docId) {
+        if (docId < baseDoc || docId >= baseDoc + docCount) {
+            return null;
+        }
+        int offset = (docId - baseDoc) * ID_BYTES;
+        return new ObjectId(Arrays.copyOfRange(ids, offset, offset + ID_BYTES)).toHexString();
+    }
+
+    @Override
+    public synchronized void collectIdsSince(long sinceMillis, Set<String> ids) {
+        if (maxTimestamp < sinceMillis) {
+            return;
+        }
+        for (int i = 0; i < docCount; i++) {
+            if (timestamps[i] >= sinceMillis) {
+                ids.add(messageId(baseDoc + i));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void writeDocs(DataOutput out) throws IOException {
+        for (int i = 0; i < docCount; i++) {
+            out.write(ids, i * ID_BYTES, ID_BYTES);
+            out.writeLong(timestamps[i]);
+        }
+    }
+
+    @Override
+    public synchronized SortedSet<String> rooms() {
+        return new TreeSet<>(rooms.keySet());
+    }
+
+    @Override
+    public synchronized SortedSet<String> terms(String roomId) {
+        Map<String, PostingList.Builder> roomTerms = rooms.get(roomId);
+        return roomTerms != null ? new TreeSet<>(roomTerms.keySet()) : new TreeSet<>();
+    }
+}
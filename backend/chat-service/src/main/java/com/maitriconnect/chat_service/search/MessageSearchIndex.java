@@ -0,0 +1,551 @@
+package com.maitriconnect.chat_service.search;
+
+import com.maitriconnect.chat_service.event.MessagesPersistedEvent;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+// Full-text index over message content, kept in the service instead of a $regex scan over chat_messages.
+// Each persisted message gets the next doc id and its terms are added to the room's posting lists in an
+// in-memory segment. That segment is written to dir as an immutable file once it holds flush-docs
+// messages or is flush-interval-ms old, and files are merged in the background once there are
+// merge-factor of them. Search intersects the query terms' postings in each of the user's rooms, newest
+// segment first, so the first page rarely reads more than the newest segment.
+//
+// Each node indexes the messages it persisted; catch-up reads messages written since the newest indexed
+// timestamp (less a skew margin) from Mongo at startup and every catch-up-interval-ms, which also picks
+// up messages persisted by other nodes and anything lost with an unflushed segment.
+@Service
+public class MessageSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageSearchIndex.class);
+
+    // Merged-away files stay open (and on disk) this long so searches already reading them can finish
+    private static final long RETIRE_GRACE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Value("${chat.search.dir:search-index}")
+    private String directoryName;
+
+    @Value("${chat.search.flush-docs:20000}")
+    private int flushDocs;
+
+    @Value("${chat.search.flush-interval-ms:30000}")
+    private long flushIntervalMs;
+
+    @Value("${chat.search.merge-factor:8}")
+    private int mergeFactor;
+
+    @Value("${chat.search.max-merge-docs:5000000}")
+    private int maxMergeDocs;
+
+    @Value("${chat.search.catch-up-skew-ms:60000}")
+    private long catchUpSkewMs;
+
+    @Value("${chat.search.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${chat.search.queue-timeout-ms:100}")
+    private long queueTimeoutMs;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer latency;
+    private final Counter rejected;
+    private final Counter merges;
+
+    private Path directory;
+    private Semaphore permits;
+    private ExecutorService maintenance;
+    private final AtomicBoolean maintenanceQueued = new AtomicBoolean();
+
+    // Ascending by doc id range; replaced wholesale so searches work on a stable snapshot
+    private volatile List<SegmentFile> segments = List.of();
+    // The segment being written out, still searchable until its file replaces it
+    private volatile MemorySegment flushing;
+    private MemorySegment active; // guarded by this
+    private final List<Retired> retired = new ArrayList<>(); // guarded by itself
+
+    // Non-null while a catch-up runs: ids indexed by either path, so each message is indexed once
+    private volatile Set<String> catchUpSeen;
+
+    public MessageSearchIndex(MeterRegistry meterRegistry,
+                              @Value("${chat.search.latency-target-ms:200}") long latencyTargetMs) {
+        this.meterRegistry = meterRegistry;
+        this.latency = Timer.builder("chat.search.latency")
+            .description("Time to answer a message search, excluding loading the messages")
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .serviceLevelObjectives(Duration.ofMillis(latencyTargetMs / 4), Duration.ofMillis(latencyTargetMs))
+            .register(meterRegistry);
+        this.rejected = Counter.builder("chat.search.rejected")
+            .description("Searches turned away because max-concurrent searches were already running")
+            .register(meterRegistry);
+        this.merges = Counter.builder("chat.search.merges")
+            .description("Segment merges completed")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        directory = Paths.get(directoryName).toAbsolutePath();
+        Files.createDirectories(directory);
+        permits = new Semaphore(maxConcurrent);
+        maintenance = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-search-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        segments = loadSegments();
+        int nextDoc = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).endDoc();
+        synchronized (this) {
+            active = new MemorySegment(nextDoc);
+        }
+        log.info("Opened search index in {} with {} segments and {} docs", directory, segments.size(), nextDoc);
+
+        Gauge.builder("chat.search.segments", this, index -> index.segments.size())
+            .description("Segment files in the search index")
+            .register(meterRegistry);
+        Gauge.builder("chat.search.docs", this, MessageSearchIndex::docCount)
+            .description("Messages in the search index")
+            .register(meterRegistry);
+    }
+
+    // A crash between writing a merged file and deleting its inputs leaves both; the merged file covers
+    // the inputs' ranges, so keep the widest file for each starting doc id and drop what it covers
+    private List<SegmentFile> loadSegments() throws IOException {
+        List<Path> files = SegmentFile.listSegmentFiles(directory);
+        files.sort(Comparator.<Path>comparingInt(file -> SegmentFile.range(file)[0])
+            .thenComparing(Comparator.<Path>comparingInt(file -> SegmentFile.range(file)[1]).reversed()));
+        List<SegmentFile> loaded = new ArrayList<>();
+        int covered = 0;
+        for (Path file : files) {
+            int[] range = SegmentFile.range(file);
+            if (range[0] < covered) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            try {
+                loaded.add(SegmentFile.open(file));
+                covered = range[1];
+            } catch (IOException e) {
+                // Unreadable segment: its messages come back through catch-up
+                log.error("Dropping unreadable search segment {}", file, e);
+                Files.deleteIfExists(file);
+            }
+        }
+        return List.copyOf(loaded);
+    }
+
+    @PreDestroy
+    public void close() {
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(30, TimeUnit.SECONDS);
+            // The first call may only finish a pending segment; the second then writes the active one
+            flush(true);
+            flush(true);
+        } catch (Exception e) {
+            log.error("Could not flush the search index on shutdown", e);
+        }
+        for (SegmentFile segment : segments) {
+            closeQuietly(segment);
+        }
+        closeRetired(true);
+    }
+
+    @Async
+    @EventListener
+    public void onMessagesPersisted(MessagesPersistedEvent event) {
+        Set<String> seen = catchUpSeen;
+        for (ChatMessage message : event.getMessages()) {
+            if (seen == null || seen.add(message.getId())) {
+                index(message);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        scheduleCatchUp();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.search.catch-up-interval-ms:60000}",
+        initialDelayString = "${chat.search.catch-up-interval-ms:60000}")
+    public void scheduleCatchUp() {
+        maintenance.execute(this::catchUp);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.search.maintenance-tick-ms:1000}")
+    public void scheduleMaintenance() {
+        // Flushes and merges run on the index thread so they never hold up the shared scheduler
+        if (maintenanceQueued.compareAndSet(false, true)) {
+            maintenance.execute(() -> {
+                maintenanceQueued.set(false);
+                try {
+                    flush(false);
+                    mergeIfNeeded();
+                    closeRetired(false);
+                } catch (Exception e) {
+                    log.error("Search index maintenance failed", e);
+                }
+            });
+        }
+    }
+
+    void index(ChatMessage message) {
+        if (message.getId() == null || !ObjectId.isValid(message.getId()) || message.getChatRoomId() == null) {
+            return;
+        }
+        Set<String> terms = Tokenizer.terms(message.getContent());
+        long timestamp = message.getTimestamp() != null
+            ? message.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli() : System.currentTimeMillis();
+        synchronized (this) {
+            active.add(new ObjectId(message.getId()), message.getChatRoomId(), timestamp, terms);
+        }
+    }
+
+    // Re-indexes messages written since the newest indexed timestamp less the skew margin; with an
+    // empty index that is every message
+    void catchUp() {
+        long start = System.currentTimeMillis();
+        Long newest = newestTimestamp();
+        LocalDateTime since = newest != null
+            ? LocalDateTime.ofInstant(Instant.ofEpochMilli(newest - catchUpSkewMs), ZoneOffset.UTC) : null;
+
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        catchUpSeen = seen;
+        int indexed = 0;
+        try {
+            if (newest != null) {
+                for (SearchSegment segment : snapshot()) {
+                    segment.collectIdsSince(newest - catchUpSkewMs, seen);
+                }
+            }
+            try (Stream<ChatMessage> messages = chatMessageRepository.streamSince(since)) {
+                for (ChatMessage message : (Iterable<ChatMessage>) messages::iterator) {
+                    if (seen.add(message.getId())) {
+                        index(message);
+                        // Catch-up runs on the index thread, so flush here or a rebuild piles up in memory
+                        if (++indexed % flushDocs == 0) {
+                            flush(false);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Search index catch-up failed", e);
+        } finally {
+            catchUpSeen = null;
+        }
+        if (indexed > 0) {
+            log.info("Search index caught up {} messages since {} in {} ms", indexed, since,
+                System.currentTimeMillis() - start);
+        }
+    }
+
+    private Long newestTimestamp() {
+        Long newest = null;
+        for (SearchSegment segment : snapshot()) {
+            if (!segment.isEmpty() && (newest == null || segment.maxTimestamp() > newest)) {
+                newest = segment.maxTimestamp();
+            }
+        }
+        return newest;
+    }
+
+    // Runs on the index thread only, so at most one flush is in progress. A segment whose write failed
+    // stays in flushing, still searchable, and its write is retried before anything else is frozen.
+    void flush(boolean force) throws IOException {
+        MemorySegment pending = flushing;
+        if (pending == null) {
+            synchronized (this) {
+                boolean due = active.docCount() >= flushDocs
+                    || (active.docCount() > 0 && active.ageNanos() >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                if (active.docCount() == 0 || !(force || due)) {
+                    return;
+                }
+                pending = active;
+                flushing = pending;
+                active = new MemorySegment(pending.endDoc());
+            }
+        }
+        SegmentFile written = SegmentFile.write(directory, List.of(pending));
+        List<SegmentFile> updated = new ArrayList<>(segments);
+        updated.add(written);
+        segments = List.copyOf(updated);
+        flushing = null;
+    }
+
+    // Merges the run of merge-factor adjacent files with the fewest docs, keeping merges cheap and
+    // letting large files settle; files above max-merge-docs are left alone
+    void mergeIfNeeded() throws IOException {
+        List<SegmentFile> current = segments;
+        if (current.size() < mergeFactor) {
+            return;
+        }
+        int bestStart = -1;
+        long bestDocs = Long.MAX_VALUE;
+        for (int start = 0; start + mergeFactor <= current.size(); start++) {
+            long docs = 0;
+            for (int i = start; i < start + mergeFactor; i++) {
+                docs += current.get(i).endDoc() - current.get(i).baseDoc();
+            }
+            if (docs < bestDocs && docs <= maxMergeDocs) {
+                bestDocs = docs;
+                bestStart = start;
+            }
+        }
+        if (bestStart < 0) {
+            return;
+        }
+
+        List<SegmentFile> inputs = current.subList(bestStart, bestStart + mergeFactor);
+        long start = System.currentTimeMillis();
+        SegmentFile merged = SegmentFile.write(directory, inputs);
+        List<SegmentFile> updated = new ArrayList<>(current.subList(0, bestStart));
+        updated.add(merged);
+        updated.addAll(current.subList(bestStart + mergeFactor, current.size()));
+        // Only the index thread changes segments, so current is still the live list here
+        segments = List.copyOf(updated);
+        merges.increment();
+
+        long now = System.nanoTime();
+        synchronized (retired) {
+            for (SegmentFile input : inputs) {
+                retired.add(new Retired(input, now));
+            }
+        }
+        log.info("Merged {} search segments ({} docs) in {} ms", inputs.size(), bestDocs,
+            System.currentTimeMillis() - start);
+    }
+
+    private void closeRetired(boolean all) {
+        long now = System.nanoTime();
+        synchronized (retired) {
+            retired.removeIf(entry -> {
+                if (all || now - entry.retiredAt >= RETIRE_GRACE_NANOS) {
+                    closeQuietly(entry.segment);
+                    try {
+                        Files.deleteIfExists(entry.segment.path());
+                    } catch (IOException e) {
+                        log.warn("Could not delete merged search segment {}", entry.segment.path(), e);
+                    }
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    // Newest first: the active segment, the one being flushed, then the files
+    private List<SearchSegment> snapshot() {
+        List<SearchSegment> snapshot = new ArrayList<>();
+        synchronized (this) {
+            snapshot.add(active);
+        }
+        MemorySegment beingFlushed = flushing;
+        if (beingFlushed != null) {
+            snapshot.add(beingFlushed);
+        }
+        List<SegmentFile> files = segments;
+        for (int i = files.size() - 1; i >= 0; i--) {
+            snapshot.add(files.get(i));
+        }
+        return snapshot;
+    }
+
+    // Ids of messages in roomIds containing every term in query, newest first, after the position in
+    // cursor. Throws IllegalArgumentException for an unusable query or cursor and IllegalStateException
+    // when max-concurrent searches are already running.
+    public SearchHits search(Collection<String> roomIds, String query, String cursor, int limit) {
+        Set<String> terms = Tokenizer.terms(query);
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("Query has no searchable terms");
+        }
+        SearchCursor after = SearchCursor.decode(cursor);
+        try {
+            if (!permits.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new IllegalStateException("Search is busy, try again shortly");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search interrupted");
+        }
+
+        long start = System.nanoTime();
+        try {
+            return collect(roomIds, terms, after, limit);
+        } catch (IOException e) {
+            throw new IllegalStateException("Search index unavailable", e);
+        } finally {
+            permits.release();
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private SearchHits collect(Collection<String> roomIds, Set<String> terms, SearchCursor after, int limit) throws IOException {
+        List<SearchSegment> snapshot = snapshot();
+        int floor = Integer.MAX_VALUE;
+        if (after != null) {
+            if (!after.messageId().equals(messageId(snapshot, after.docId()))) {
+                throw new IllegalArgumentException("Search cursor is not valid on this server; start the search again");
+            }
+            floor = after.docId();
+        }
+
+        // Segment ranges are disjoint and visited newest first, so once a segment fills the page the
+        // older ones cannot contribute; floor also skips a flushed segment seen twice mid-swap
+        List<int[]> hits = new ArrayList<>(); // {docId, snapshot index}
+        for (int s = 0; s < snapshot.size() && hits.size() <= limit; s++) {
+            SearchSegment segment = snapshot.get(s);
+            if (segment.isEmpty() || segment.baseDoc() >= floor) {
+                continue;
+            }
+            List<int[]> segmentHits = new ArrayList<>();
+            for (String roomId : roomIds) {
+                int[] docs = matchAll(segment, roomId, terms);
+                for (int doc : docs) {
+                    if (doc < floor) {
+                        segmentHits.add(new int[] { doc, s });
+                    }
+                }
+            }
+            segmentHits.sort((a, b) -> Integer.compare(b[0], a[0]));
+            hits.addAll(segmentHits.subList(0, Math.min(segmentHits.size(), limit + 1 - hits.size())));
+            floor = Math.min(floor, segment.baseDoc());
+        }
+
+        boolean hasMore = hits.size() > limit;
+        List<String> messageIds = new ArrayList<>();
+        int lastDoc = -1;
+        String lastId = null;
+        for (int[] hit : hits.subList(0, Math.min(limit, hits.size()))) {
+            String messageId = snapshot.get(hit[1]).messageId(hit[0]);
+            if (messageId != null) {
+                messageIds.add(messageId);
+                lastDoc = hit[0];
+                lastId = messageId;
+            }
+        }
+        String nextCursor = hasMore && lastId != null ? new SearchCursor(lastDoc, lastId).encode() : null;
+        return new SearchHits(messageIds, nextCursor, hasMore);
+    }
+
+    // Intersects rarest list first so the running result only shrinks
+    private int[] matchAll(SearchSegment segment, String roomId, Set<String> terms) throws IOException {
+        List<int[]> lists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            int[] postings = segment.postings(roomId, term);
+            if (postings == null) {
+                return new int[0];
+            }
+            lists.add(postings);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = PostingList.intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private String messageId(List<SearchSegment> snapshot, int docId) throws IOException {
+        for (SearchSegment segment : snapshot) {
+            if (docId >= segment.baseDoc() && docId < segment.endDoc()) {
+                return segment.messageId(docId);
+            }
+        }
+        return null;
+    }
+
+    private int docCount() {
+        synchronized (this) {
+            return active != null ? active.endDoc() : 0;
+        }
+    }
+
+    private static void closeQuietly(SegmentFile segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Could not close search segment {}", segment.path(), e);
+        }
+    }
+
+    public record SearchHits(List<String> messageIds, String nextCursor, boolean hasMore) {
+    }
+
+    private record Retired(SegmentFile segment, long retiredAt) {
+    }
+
+    // Position in this node's index: the doc id of the last hit, plus its message id so a cursor from
+    // another node (whose doc ids differ) is detected instead of silently skipping results
+    private record SearchCursor(int docId, String messageId) {
+
+        static SearchCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new SearchCursor(Integer.parseInt(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+
+        String encode() {
+            String raw = docId + "|" + messageId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
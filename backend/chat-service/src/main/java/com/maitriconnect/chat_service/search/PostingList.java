@@ -0,0 +1,93 @@
+package com.maitriconnect.chat_service.search;
+
+import java.util.Arrays;
+
+// A posting list is an ascending run of doc ids stored as varint-encoded gaps from the previous id:
+// consecutive messages in a room that share a term cost one byte each instead of four.
+public final class PostingList {
+
+    private PostingList() {
+    }
+
+    // Appends ids in ascending order into a growing compressed buffer
+    public static final class Builder {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int count;
+        private int lastDoc = -1;
+
+        public void add(int docId) {
+            if (docId <= lastDoc) {
+                if (docId == lastDoc) {
+                    return;
+                }
+                throw new IllegalArgumentException("Doc ids must be added in ascending order: " + docId + " after " + lastDoc);
+            }
+            int gap = lastDoc < 0 ? docId : docId - lastDoc;
+            ensureCapacity(5);
+            length = writeVarint(bytes, length, gap);
+            lastDoc = docId;
+            count++;
+        }
+
+        public int count() { return count; }
+        public int length() { return length; }
+        public byte[] bytes() { return bytes; }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+
+    public static int[] decode(byte[] encoded, int offset, int length) {
+        int[] docs = new int[Math.max(4, length)];
+        int count = 0;
+        int doc = -1;
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encoded[position++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            doc = doc < 0 ? gap : doc + gap;
+            docs[count++] = doc;
+        }
+        return Arrays.copyOf(docs, count);
+    }
+
+    // Both inputs ascending; the result is ascending and only holds ids present in both
+    public static int[] intersect(int[] left, int[] right) {
+        int[] result = new int[Math.min(left.length, right.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    static int writeVarint(byte[] target, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            target[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[position++] = (byte) value;
+        return position;
+    }
+}
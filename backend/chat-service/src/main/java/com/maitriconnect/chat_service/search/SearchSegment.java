@@ -0,0 +1,39 @@
+package com.maitriconnect.chat_service.search;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Set;
+import java.util.SortedSet;
+
+// The index is a stack of segments, each owning a contiguous doc id range [baseDoc, endDoc) and holding
+// postings per room and term. Ranges never overlap, so the newest segment holds the newest messages.
+interface SearchSegment {
+
+    int baseDoc();
+
+    int endDoc();
+
+    long minTimestamp();
+
+    long maxTimestamp();
+
+    // Ascending doc ids of messages in the room containing the term, or null if there are none
+    int[] postings(String roomId, String term) throws IOException;
+
+    // Null for a doc id this segment has no message for
+    String messageId(int docId) throws IOException;
+
+    // Adds the ids of messages whose timestamp is at or after sinceMillis
+    void collectIdsSince(long sinceMillis, Set<String> ids) throws IOException;
+
+    // Writes one SegmentFile doc record (message id, timestamp) per doc id in the range
+    void writeDocs(DataOutput out) throws IOException;
+
+    SortedSet<String> rooms();
+
+    SortedSet<String> terms(String roomId);
+
+    default boolean isEmpty() {
+        return endDoc() == baseDoc();
+    }
+}
@@ -0,0 +1,358 @@
+package com.maitriconnect.chat_service.search;
+
+import org.bson.types.ObjectId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// An immutable segment on disk. Only the term dictionary is held in memory; doc records and postings
+// are read with positional reads, which are safe to run from many search threads at once.
+//
+// Layout: a fixed header, one 20-byte doc record (ObjectId, timestamp millis) per doc id, the compressed
+// posting lists, then the dictionary (per room, its sorted terms with the offset and length of each list).
+final class SegmentFile implements SearchSegment, AutoCloseable {
+
+    private static final int MAGIC = 0x43534958; // "CSIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    private static final int DOC_BYTES = MemorySegment.ID_BYTES + Long.BYTES;
+    private static final Pattern NAME = Pattern.compile("seg-(\\d+)-(\\d+)\\.idx");
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int baseDoc;
+    private final int endDoc;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final Map<String, RoomDictionary> dictionary;
+
+    private SegmentFile(Path path, FileChannel channel, int baseDoc, int endDoc, long minTimestamp,
+                        long maxTimestamp, Map<String, RoomDictionary> dictionary) {
+        this.path = path;
+        this.channel = channel;
+        this.baseDoc = baseDoc;
+        this.endDoc = endDoc;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.dictionary = dictionary;
+    }
+
+    static String fileName(int baseDoc, int endDoc) {
+        return String.format("seg-%010d-%010d.idx", baseDoc, endDoc);
+    }
+
+    // The doc id range encoded in a segment file name, or null if the name is not a segment's
+    static int[] range(Path file) {
+        Matcher matcher = NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new int[] { Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) };
+    }
+
+    static List<Path> listSegmentFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (var stream = Files.list(directory)) {
+            stream.filter(file -> range(file) != null).forEach(files::add);
+        }
+        return files;
+    }
+
+    static SegmentFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a search segment: " + path);
+            }
+            int baseDoc = header.getInt();
+            int endDoc = header.getInt();
+            long minTimestamp = header.getLong();
+            long maxTimestamp = header.getLong();
+            long dictionaryOffset = header.getLong();
+
+            Map<String, RoomDictionary> dictionary = new HashMap<>();
+            channel.position(dictionaryOffset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int roomCount = in.readInt();
+            for (int r = 0; r < roomCount; r++) {
+                String roomId = in.readUTF();
+                int termCount = in.readInt();
+                RoomDictionary room = new RoomDictionary(termCount);
+                for (int t = 0; t < termCount; t++) {
+                    room.terms[t] = in.readUTF();
+                    room.offsets[t] = in.readLong();
+                    room.lengths[t] = in.readInt();
+                }
+                dictionary.put(roomId, room);
+            }
+            return new SegmentFile(path, channel, baseDoc, endDoc, minTimestamp, maxTimestamp, dictionary);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Writes the sources (ascending, non-overlapping ranges) into one new segment file. The file is
+    // written under a temporary name and moved into place, so a crash never leaves a partial segment.
+    static SegmentFile write(Path directory, List<? extends SearchSegment> sources) throws IOException {
+        int baseDoc = sources.get(0).baseDoc();
+        int endDoc = sources.get(sources.size() - 1).endDoc();
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        SortedSet<String> rooms = new TreeSet<>();
+        for (SearchSegment source : sources) {
+            rooms.addAll(source.rooms());
+            minTimestamp = Math.min(minTimestamp, source.minTimestamp());
+            maxTimestamp = Math.max(maxTimestamp, source.maxTimestamp());
+        }
+
+        Path target = directory.resolve(fileName(baseDoc, endDoc));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            DataOutputStream out = new DataOutputStream(counter);
+            out.write(new byte[HEADER_BYTES]);
+
+            int nextDoc = baseDoc;
+            for (SearchSegment source : sources) {
+                // Doc ids lost to a failed flush leave a gap; empty records keep the table addressable by id
+                writeEmptyDocs(out, source.baseDoc() - nextDoc);
+                source.writeDocs(out);
+                nextDoc = source.endDoc();
+            }
+
+            ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream();
+            DataOutputStream dictionaryOut = new DataOutputStream(dictionaryBytes);
+            dictionaryOut.writeInt(rooms.size());
+            for (String roomId : rooms) {
+                SortedSet<String> terms = new TreeSet<>();
+                for (SearchSegment source : sources) {
+                    terms.addAll(source.terms(roomId));
+                }
+                dictionaryOut.writeUTF(roomId);
+                dictionaryOut.writeInt(terms.size());
+                for (String term : terms) {
+                    PostingList.Builder postings = new PostingList.Builder();
+                    for (SearchSegment source : sources) {
+                        int[] docs = source.postings(roomId, term);
+                        if (docs != null) {
+                            for (int doc : docs) {
+                                postings.add(doc);
+                            }
+                        }
+                    }
+                    dictionaryOut.writeUTF(term);
+                    dictionaryOut.writeLong(counter.count);
+                    dictionaryOut.writeInt(postings.length());
+                    out.write(postings.bytes(), 0, postings.length());
+                }
+            }
+            long dictionaryOffset = counter.count;
+            dictionaryOut.flush();
+            dictionaryBytes.writeTo(out);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC).putInt(VERSION).putInt(baseDoc).putInt(endDoc)
+                .putLong(minTimestamp).putLong(maxTimestamp).putLong(dictionaryOffset);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(target);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long sizeBytes() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public int baseDoc() {
+        return baseDoc;
+    }
+
+    @Override
+    public int endDoc() {
+        return endDoc;
+    }
+
+    @Override
+    public long minTimestamp() {
+        return minTimestamp;
+    }
+
+    @Override
+    public long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    @Override
+    public int[] postings(String roomId, String term) throws IOException {
+        RoomDictionary room = dictionary.get(roomId);
+        int index = room != null ? Arrays.binarySearch(room.terms, term) : -1;
+        if (index < 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(room.lengths[index]);
+        readFully(channel, buffer, room.offsets[index]);
+        return PostingList.decode(buffer.array(), 0, buffer.capacity());
+    }
+
+    @Override
+    public String messageId(int docId) throws IOException {
+        if (docId < baseDoc || docId >= endDoc) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(MemorySegment.ID_BYTES);
+        readFully(channel, record, HEADER_BYTES + (long) (docId - baseDoc) * DOC_BYTES);
+        return isEmptyId(record.array()) ? null : new ObjectId(record.array()).toHexString();
+    }
+
+    @Override
+    public void collectIdsSince(long sinceMillis, Set<String> ids) throws IOException {
+        if (maxTimestamp < sinceMillis) {
+            return;
+        }
+        int docs = endDoc - baseDoc;
+        ByteBuffer buffer = ByteBuffer.allocate(DOC_BYTES * 4096);
+        byte[] id = new byte[MemorySegment.ID_BYTES];
+        for (int first = 0; first < docs; first += 4096) {
+            int count = Math.min(4096, docs - first);
+            buffer.clear().limit(count * DOC_BYTES);
+            readFully(channel, buffer, HEADER_BYTES + (long) first * DOC_BYTES);
+            buffer.flip();
+            for (int i = 0; i < count; i++) {
+                buffer.get(id);
+                long timestamp = buffer.getLong();
+                if (timestamp >= sinceMillis && !isEmptyId(id)) {
+                    ids.add(new ObjectId(id).toHexString());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void writeDocs(DataOutput out) throws IOException {
+        long remaining = (long) (endDoc - baseDoc) * DOC_BYTES;
+        long position = HEADER_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+            readFully(channel, buffer, position);
+            out.write(buffer.array(), 0, buffer.limit());
+            position += buffer.limit();
+            remaining -= buffer.limit();
+        }
+    }
+
+    @Override
+    public SortedSet<String> rooms() {
+        return new TreeSet<>(dictionary.keySet());
+    }
+
+    @Override
+    public SortedSet<String> terms(String roomId) {
+        RoomDictionary room = dictionary.get(roomId);
+        return room != null ? new TreeSet<>(Arrays.asList(room.terms)) : new TreeSet<>();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void writeEmptyDocs(DataOutput out, int count) throws IOException {
+        byte[] empty = new byte[DOC_BYTES];
+        for (int i = 0; i < count; i++) {
+            out.write(empty);
+        }
+    }
+
+    private static boolean isEmptyId(byte[] id) {
+        for (byte b : id) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+            position += read;
+        }
+    }
+
+    private static final class RoomDictionary {
+        private final String[] terms;
+        private final long[] offsets;
+        private final int[] lengths;
+
+        private RoomDictionary(int termCount) {
+            this.terms = new String[termCount];
+            this.offsets = new long[termCount];
+            this.lengths = new int[termCount];
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
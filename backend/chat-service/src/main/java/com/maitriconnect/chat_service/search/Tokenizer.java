@@ -0,0 +1,49 @@
+package com.maitriconnect.chat_service.search;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Splits text into the distinct terms the index stores: NFKC-normalized, lower-cased runs of letters and
+// digits. Messages and queries go through the same code, so a query term matches exactly what was indexed.
+public final class Tokenizer {
+
+    static final int MIN_TERM_LENGTH = 2;
+    static final int MAX_TERM_LENGTH = 64;
+
+    private Tokenizer() {
+    }
+
+    public static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); ) {
+            int codePoint = i < normalized.length() ? normalized.codePointAt(i) : -1;
+            boolean wordChar = codePoint >= 0 && Character.isLetterOrDigit(codePoint);
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                add(terms, normalized, start, i);
+                start = -1;
+            }
+            i += codePoint >= 0 ? Character.charCount(codePoint) : 1;
+        }
+        return terms;
+    }
+
+    private static void add(Set<String> terms, String text, int start, int end) {
+        int codePoints = text.codePointCount(start, end);
+        if (codePoints < MIN_TERM_LENGTH) {
+            return;
+        }
+        if (codePoints > MAX_TERM_LENGTH) {
+            end = text.offsetByCodePoints(start, MAX_TERM_LENGTH);
+        }
+        terms.add(text.substring(start, end));
+    }
+}
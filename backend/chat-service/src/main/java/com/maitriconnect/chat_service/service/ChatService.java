@@ -1,70 +1,184 @@
 package com.maitriconnect.chat_service.service;
 
 import com.maitriconnect.chat_service.dto.ChatRoomResponse;
+import com.maitriconnect.chat_service.dto.InboxBadgeResponse;
+import com.maitriconnect.chat_service.dto.MessagePageResponse;
+import com.maitriconnect.chat_service.dto.MessageSearchResponse;
+import com.maitriconnect.chat_service.dto.ReceiptResult;
+import com.maitriconnect.chat_service.event.MessagesPersistedEvent;
 import com.maitriconnect.chat_service.model.ChatMessage;
 import com.maitriconnect.chat_service.model.ChatRoom;
 import com.maitriconnect.chat_service.repository.ChatMessageRepository;
 import com.maitriconnect.chat_service.repository.ChatRoomRepository;
+import com.maitriconnect.chat_service.search.MessageSearchIndex;
+import com.maitriconnect.chat_service.util.MessageCursor;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 public class ChatService {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 20;
+    private static final int MAX_SEARCH_PAGE_SIZE = 50;
+
     @Autowired
     private ChatMessageRepository chatMessageRepository;
 
     @Autowired
     private ChatRoomRepository chatRoomRepository;
 
+    @Autowired
+    private MessageWriteBehindQueue messageWriteBehindQueue;
+
+    @Autowired
+    private RoomSummaryUpdater roomSummaryUpdater;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MessageRoomLookup messageRoomLookup;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private RoomMembershipCache roomMembershipCache;
+
+    @Autowired
+    private DirectRoomService directRoomService;
+
+    @Autowired
+    private MessageSearchIndex messageSearchIndex;
+
+    @Autowired
+    private RoomSequenceAllocator roomSequenceAllocator;
+
     public ChatMessage saveMessage(ChatMessage message) {
-        // Update last message in chat room
-        ChatRoom room = chatRoomRepository.findById(message.getChatRoomId()).orElse(null);
-        if (room != null) {
-            room.setLastMessage(message.getContent());
-            room.setLastMessageTime(LocalDateTime.now());
-            chatRoomRepository.save(room);
+        stamp(message);
+        message.setPersistedAt(LocalDateTime.now());
+        ChatMessage saved = chatMessageRepository.save(message);
+        messageRoomLookup.register(saved.getId(), saved.getChatRoomId());
+        recentMessageCache.append(saved);
+        // Same downstream handling (room summary, unread counters, ack) as a write-behind batch
+        eventPublisher.publishEvent(new MessagesPersistedEvent(List.of(saved), saved.getPersistedAt()));
+        return saved;
+    }
+
+    // Accept a message for asynchronous persistence: the ID is assigned here so the message can be
+    // broadcast right away, and the write-behind queue stores it in the next batch
+    public ChatMessage acceptMessage(ChatMessage message) {
+        if (message.getId() == null) {
+            message.setId(new ObjectId().toHexString());
+        }
+        stamp(message);
+        messageRoomLookup.register(message.getId(), message.getChatRoomId());
+        recentMessageCache.append(message);
+        messageWriteBehindQueue.enqueue(message);
+        return message;
+    }
+
+    // Order is decided here, not by the client or the thread that deserialized the message
+    private void stamp(ChatMessage message) {
+        message.setTimestamp(LocalDateTime.now());
+        message.setSeq(message.getChatRoomId() != null ? roomSequenceAllocator.next(message.getChatRoomId()) : null);
+    }
+
+    // Room last-message updates are coalesced per room by the summary updater
+    @Async
+    @EventListener
+    public void onMessagesPersisted(MessagesPersistedEvent event) {
+        for (ChatMessage message : event.getMessages()) {
+            roomSummaryUpdater.record(message);
+            roomMembershipCache.recordLastMessage(message);
         }
-        
-        return chatMessageRepository.save(message);
     }
 
     public List<ChatMessage> getMessagesByRoom(String roomId) {
         return chatMessageRepository.findByChatRoomIdOrderByTimestampAsc(roomId);
     }
 
+    // One page of room history, newest first; before/after are cursors from a previous page.
+    // Message status is derived for viewerId from the room's read watermarks.
+    public MessagePageResponse getRoomMessagePage(String roomId, String viewerId, String before, String after, Integer limit) {
+        MessageCursor beforeCursor = MessageCursor.decode(before);
+        MessageCursor afterCursor = MessageCursor.decode(after);
+        int pageSize = pageSize(limit);
+        if (beforeCursor == null && afterCursor == null) {
+            return toPage(newestRoomMessages(roomId, pageSize + 1), pageSize, false, viewerId);
+        }
+        List<ChatMessage> fetched = chatMessageRepository.findRoomPage(roomId, beforeCursor, afterCursor, pageSize + 1);
+        return toPage(fetched, pageSize, afterCursor != null && beforeCursor == null, viewerId);
+    }
+
+    // The newest page is what opening a chat asks for; serve it from the room's buffer when possible.
+    // Cached messages are copies, so setting the viewer's status on them is safe.
+    private List<ChatMessage> newestRoomMessages(String roomId, int count) {
+        List<ChatMessage> cached = recentMessageCache.getNewest(roomId, count);
+        if (cached != null) {
+            return cached;
+        }
+        int loadSize = Math.max(count, recentMessageCache.getMessagesPerRoom());
+        List<ChatMessage> loaded = chatMessageRepository.findRoomPage(roomId, null, null, loadSize);
+        recentMessageCache.load(roomId, loaded);
+        cached = recentMessageCache.getNewest(roomId, count);
+        if (cached != null) {
+            return cached;
+        }
+        List<ChatMessage> page = loaded.size() > count ? loaded.subList(0, count) : loaded;
+        return new ArrayList<>(page);
+    }
+
+    // The messages after a room sequence number, for clients that saw a gap in the live sequence
+    public MessagePageResponse getRoomMessagesAfterSeq(String roomId, String viewerId, long afterSeq, Integer limit) {
+        int pageSize = pageSize(limit);
+        List<ChatMessage> fetched = chatMessageRepository.findRoomPage(roomId, null, MessageCursor.afterSeq(afterSeq), pageSize + 1);
+        return toPage(fetched, pageSize, true, viewerId);
+    }
+
     public ChatRoom createChatRoom(String name, Set<String> participants, String createdBy, ChatRoom.ChatRoomType type) {
-        ChatRoom room = new ChatRoom(name, participants, createdBy, type);
-        return chatRoomRepository.save(room);
+        if (type == ChatRoom.ChatRoomType.DIRECT && participants != null && participants.size() == 2) {
+            // Direct rooms always go through the pair key so a pair never gets a second room
+            List<String> pair = List.copyOf(participants);
+            return directRoomService.getOrCreate(pair.get(0), pair.get(1));
+        }
+        ChatRoom room = chatRoomRepository.save(new ChatRoom(name, participants, createdBy, type));
+        roomMembershipCache.onRoomSaved(room);
+        return room;
     }
 
+    // Served from the membership cache; Mongo is only asked on a cold or expired entry
     public List<ChatRoom> getUserChatRooms(String userId) {
-        return chatRoomRepository.findByParticipantsContaining(userId);
+        return roomMembershipCache.getUserRooms(userId);
+    }
+
+    public boolean isRoomMember(String roomId, String userId) {
+        return roomMembershipCache.isMember(roomId, userId);
     }
 
     // Get or create direct chat room between two users
     public ChatRoom getOrCreateDirectChatRoom(String user1, String user2) {
-        Optional<ChatRoom> existingRoom = chatRoomRepository.findDirectChatRoom(user1, user2);
-        if (existingRoom.isPresent()) {
-            return existingRoom.get();
-        }
-
-        Set<String> participants = new HashSet<>();
-        participants.add(user1);
-        participants.add(user2);
-        
-        // Create room name from usernames
-        String roomName = user1 + "_" + user2;
-        
-        return createChatRoom(roomName, participants, user1, ChatRoom.ChatRoomType.DIRECT);
+        return directRoomService.getOrCreate(user1, user2);
     }
 
     // Get direct messages between two users
@@ -72,30 +186,89 @@ public class ChatService {
         return chatMessageRepository.findDirectMessages(user1, user2);
     }
 
+    public MessagePageResponse getDirectMessagePage(String user1, String user2, String before, String after, Integer limit) {
+        MessageCursor beforeCursor = MessageCursor.decode(before);
+        MessageCursor afterCursor = MessageCursor.decode(after);
+        int pageSize = pageSize(limit);
+        List<ChatMessage> fetched = chatMessageRepository.findDirectPage(user1, user2, beforeCursor, afterCursor, pageSize + 1);
+        return toPage(fetched, pageSize, afterCursor != null && beforeCursor == null, user1);
+    }
+
+    // Messages containing every term of the query, newest first, from the user's rooms or from roomId
+    // alone. Only the page's hits are loaded from Mongo.
+    public MessageSearchResponse searchMessages(String userId, String query, String roomId, String cursor, Integer limit) {
+        List<String> roomIds;
+        if (roomId != null) {
+            if (!isRoomMember(roomId, userId)) {
+                throw new IllegalArgumentException("Not a member of room " + roomId);
+            }
+            roomIds = List.of(roomId);
+        } else {
+            roomIds = getUserChatRooms(userId).stream().map(ChatRoom::getId).collect(Collectors.toList());
+        }
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_SEARCH_PAGE_SIZE : Math.min(limit, MAX_SEARCH_PAGE_SIZE);
+        MessageSearchIndex.SearchHits hits = messageSearchIndex.search(roomIds, query, cursor, pageSize);
+
+        Map<String, ChatMessage> byId = new HashMap<>();
+        for (ChatMessage message : chatMessageRepository.findAllById(hits.messageIds())) {
+            byId.put(message.getId(), message);
+        }
+        List<ChatMessage> messages = new ArrayList<>(hits.messageIds().size());
+        for (String messageId : hits.messageIds()) {
+            ChatMessage message = byId.get(messageId);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        readStateService.applyStatuses(messages, userId);
+        return new MessageSearchResponse(messages, hits.nextCursor(), hits.hasMore());
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    // fetched is newest first and holds up to pageSize + 1 messages; the extra one only signals that
+    // more exist. Walking forward (after-only) the extra is the newest message, otherwise the oldest.
+    private MessagePageResponse toPage(List<ChatMessage> fetched, int pageSize, boolean forward, String viewerId) {
+        boolean hasMore = fetched.size() > pageSize;
+        List<ChatMessage> messages = fetched;
+        if (hasMore) {
+            messages = forward ? fetched.subList(1, fetched.size()) : fetched.subList(0, pageSize);
+        }
+        if (messages.isEmpty()) {
+            return new MessagePageResponse(List.of(), null, null, false);
+        }
+        readStateService.applyStatuses(messages, viewerId);
+        String newerCursor = MessageCursor.of(messages.get(0)).encode();
+        String olderCursor = MessageCursor.of(messages.get(messages.size() - 1)).encode();
+        return new MessagePageResponse(List.copyOf(messages), olderCursor, newerCursor, hasMore);
+    }
+
     // Mark messages as delivered or seen
     public void updateMessageStatus(String messageId, ChatMessage.MessageStatus status) {
         ChatMessage message = chatMessageRepository.findById(messageId).orElse(null);
         if (message != null) {
             message.setStatus(status);
-            chatMessageRepository.save(message);
+            recentMessageCache.replace(chatMessageRepository.save(message));
         }
     }
 
-    // Mark all messages in a room as seen by a user
-    public void markMessagesAsSeen(String roomId, String userId) {
-        List<ChatMessage> messages = chatMessageRepository.findByChatRoomIdOrderByTimestampAsc(roomId);
-        for (ChatMessage message : messages) {
-            if (!message.getSenderId().equals(userId)) {
-                message.setStatus(ChatMessage.MessageStatus.READ);
-                message.setReadAt(LocalDateTime.now());
-                chatMessageRepository.save(message);
-            }
-        }
+    // Mark the room's messages up to messageId as seen by a user
+    public ReceiptResult markMessagesAsSeen(String roomId, String userId, String messageId) {
+        return markRoomMessagesAsRead(roomId, userId, messageId);
     }
 
-    // Get unread message count for a user
+    // Get unread message count for a user, served from the materialized counters
     public Long getUnreadMessageCount(String userId) {
-        return chatMessageRepository.countByReceiverIdAndStatus(userId, ChatMessage.MessageStatus.SENT);
+        return unreadCounterService.getInbox(userId).getTotal();
+    }
+
+    public InboxBadgeResponse getInbox(String userId) {
+        return unreadCounterService.getInbox(userId);
     }
 
     // Convert ChatRoom to ChatRoomResponse
@@ -106,6 +279,7 @@ public class ChatService {
         response.setType(room.getType().toString());
         response.setLastMessage(room.getLastMessage());
         response.setLastMessageTime(room.getLastMessageTime());
+        roomSummaryUpdater.applyPending(response);
         response.setCreatedAt(room.getCreatedAt());
         response.setParticipants(room.getParticipants());
         
@@ -134,7 +308,7 @@ public class ChatService {
         if (message != null && message.getStatus() == ChatMessage.MessageStatus.SENT) {
             message.setStatus(ChatMessage.MessageStatus.DELIVERED);
             message.setDeliveredAt(LocalDateTime.now());
-            chatMessageRepository.save(message);
+            recentMessageCache.replace(chatMessageRepository.save(message));
         }
     }
 
@@ -143,32 +317,40 @@ public class ChatService {
         if (message != null) {
             message.setStatus(ChatMessage.MessageStatus.READ);
             message.setReadAt(LocalDateTime.now());
-            chatMessageRepository.save(message);
+            recentMessageCache.replace(chatMessageRepository.save(message));
         }
     }
 
-    // Batch mark messages as delivered/read
-    public void markRoomMessagesAsDelivered(String roomId, String userId) {
-        List<ChatMessage> messages = chatMessageRepository.findByChatRoomIdOrderByTimestampAsc(roomId);
-        for (ChatMessage message : messages) {
-            if (!message.getSenderId().equals(userId) && 
-                message.getStatus() == ChatMessage.MessageStatus.SENT) {
-                message.setStatus(ChatMessage.MessageStatus.DELIVERED);
-                message.setDeliveredAt(LocalDateTime.now());
-                chatMessageRepository.save(message);
-            }
+    // Receipts only move the reader's watermark for the room, up to the message the client names, so
+    // messages accepted after it and not yet delivered to that client stay unread. Message documents
+    // are not touched.
+    public ReceiptResult markRoomMessagesAsDelivered(String roomId, String userId, String messageId) {
+        LocalDateTime upTo = receiptPosition(roomId, messageId);
+        return upTo != null ? readStateService.markDelivered(roomId, userId, upTo) : new ReceiptResult(0, null);
+    }
+
+    public ReceiptResult markRoomMessagesAsRead(String roomId, String userId, String messageId) {
+        LocalDateTime upTo = receiptPosition(roomId, messageId);
+        if (upTo == null) {
+            return new ReceiptResult(0, null);
+        }
+        ReceiptResult result = readStateService.markRead(roomId, userId, upTo);
+        if (result.getModifiedCount() > 0) {
+            unreadCounterService.reset(userId, roomId, upTo);
         }
+        return result;
     }
 
-    public void markRoomMessagesAsRead(String roomId, String userId) {
-        List<ChatMessage> messages = chatMessageRepository.findByChatRoomIdOrderByTimestampAsc(roomId);
-        for (ChatMessage message : messages) {
-            if (!message.getSenderId().equals(userId)) {
-                message.setStatus(ChatMessage.MessageStatus.READ);
-                message.setReadAt(LocalDateTime.now());
-                chatMessageRepository.save(message);
-            }
+    // Timestamp of the receipt's message, or null for no message, an unknown one or one of another room
+    private LocalDateTime receiptPosition(String roomId, String messageId) {
+        if (roomId == null || messageId == null) {
+            return null;
+        }
+        ChatMessage message = recentMessageCache.find(roomId, messageId);
+        if (message == null) {
+            message = chatMessageRepository.findById(messageId).orElse(null);
         }
+        return message != null && roomId.equals(message.getChatRoomId()) ? message.getTimestamp() : null;
     }
 
     // Add file attachment to message
@@ -176,7 +358,7 @@ public class ChatService {
         ChatMessage message = chatMessageRepository.findById(messageId).orElse(null);
         if (message != null) {
             message.getFileAttachments().add(fileId);
-            chatMessageRepository.save(message);
+            recentMessageCache.replace(chatMessageRepository.save(message));
         }
     }
 }
\ No newline at end of file
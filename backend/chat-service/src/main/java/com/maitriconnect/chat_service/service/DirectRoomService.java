@@ -0,0 +1,122 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.model.ChatRoom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Direct rooms are identified by ChatRoom.directKey under a unique index. Get-or-create is a single
+// upsert on that key, so two first messages racing each other end up in the same room, and the
+// pair -> roomId mapping is cached because it never changes once the room exists.
+@Service
+public class DirectRoomService {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectRoomService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RoomMembershipCache roomMembershipCache;
+
+    private final Map<String, String> roomIdByPair;
+
+    public DirectRoomService(@Value("${chat.direct-rooms.cache-max-entries:50000}") int maxEntries) {
+        this.roomIdByPair = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public ChatRoom getOrCreate(String user1, String user2) {
+        String key = ChatRoom.directKeyFor(user1, user2);
+        String cachedId;
+        synchronized (roomIdByPair) {
+            cachedId = roomIdByPair.get(key);
+        }
+        if (cachedId != null) {
+            ChatRoom cached = roomMembershipCache.getRoom(cachedId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        ChatRoom room = upsert(key, user1, user2);
+        synchronized (roomIdByPair) {
+            roomIdByPair.put(key, room.getId());
+        }
+        roomMembershipCache.onRoomSaved(room);
+        return room;
+    }
+
+    private ChatRoom upsert(String key, String user1, String user2) {
+        Query query = new Query(Criteria.where("directKey").is(key));
+        Update update = new Update()
+            .setOnInsert("name", user1 + "_" + user2)
+            .setOnInsert("participants", new LinkedHashSet<>(Arrays.asList(user1, user2)))
+            .setOnInsert("createdBy", user1)
+            .setOnInsert("type", ChatRoom.ChatRoomType.DIRECT)
+            .setOnInsert("createdAt", LocalDateTime.now());
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoTemplate.findAndModify(query, update, options, ChatRoom.class);
+        } catch (DuplicateKeyException e) {
+            // Lost the insert race to a concurrent upsert; the room exists now
+            return mongoTemplate.findOne(query, ChatRoom.class);
+        }
+    }
+
+    // Runs after MongoIndexManager has ensured the unique sparse direct_key index; legacy direct rooms get their key.
+    // Oldest rooms are keyed first; a later duplicate of the same pair keeps no key and is only logged.
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillDirectKeys() {
+        Query legacy = new Query(Criteria.where("type").is(ChatRoom.ChatRoomType.DIRECT)
+            .and("directKey").exists(false)
+            .and("participants").size(2))
+            .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        int keyed = 0;
+        List<String> duplicates = new ArrayList<>();
+        try (Stream<ChatRoom> rooms = mongoTemplate.stream(legacy, ChatRoom.class)) {
+            for (ChatRoom room : (Iterable<ChatRoom>) rooms::iterator) {
+                List<String> pair = new ArrayList<>(room.getParticipants());
+                String key = ChatRoom.directKeyFor(pair.get(0), pair.get(1));
+                try {
+                    mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(room.getId())),
+                        new Update().set("directKey", key), ChatRoom.class);
+                    keyed++;
+                } catch (DuplicateKeyException e) {
+                    duplicates.add(room.getId());
+                }
+            }
+        } catch (Exception e) {
+            log.error("Direct room key backfill failed after {} rooms", keyed, e);
+            return;
+        }
+        if (keyed > 0 || !duplicates.isEmpty()) {
+            log.info("Backfilled directKey on {} direct rooms; {} duplicate rooms left without a key: {}",
+                keyed, duplicates.size(), duplicates);
+        }
+    }
+}
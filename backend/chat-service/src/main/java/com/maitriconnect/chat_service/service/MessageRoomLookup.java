@@ -0,0 +1,59 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU of messageId -> chatRoomId. Messages are registered when accepted, so reactions on
+// recent messages resolve their room without a query; older ones fall back to a projected findById.
+@Service
+public class MessageRoomLookup {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final Map<String, String> roomByMessage;
+
+    public MessageRoomLookup(@Value("${chat.message-room-cache.max-entries:100000}") int maxEntries) {
+        this.roomByMessage = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public void register(String messageId, String chatRoomId) {
+        if (messageId == null || chatRoomId == null) {
+            return;
+        }
+        synchronized (roomByMessage) {
+            roomByMessage.put(messageId, chatRoomId);
+        }
+    }
+
+    public String findRoomId(String messageId) {
+        synchronized (roomByMessage) {
+            String roomId = roomByMessage.get(messageId);
+            if (roomId != null) {
+                return roomId;
+            }
+        }
+
+        Query query = new Query(Criteria.where("_id").is(messageId));
+        query.fields().include("chatRoomId");
+        ChatMessage message = mongoTemplate.findOne(query, ChatMessage.class);
+        if (message == null) {
+            return null;
+        }
+        register(messageId, message.getChatRoomId());
+        return message.getChatRoomId();
+    }
+}
@@ -0,0 +1,177 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.config.AsyncConfig;
+import com.maitriconnect.chat_service.event.MessagesPersistedEvent;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Buffers accepted chat messages and flushes them to chat_messages in batches on a background thread.
+// A batch is written once it reaches batch-size or once its oldest message has waited flush-interval-ms.
+// Depends on the listener executor so it is stopped, and its last batch published, before that executor.
+@Service
+@DependsOn(AsyncConfig.PERSISTED_EVENTS_EXECUTOR)
+public class MessageWriteBehindQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageWriteBehindQueue.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${chat.write-behind.capacity:10000}")
+    private int capacity;
+
+    @Value("${chat.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${chat.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${chat.write-behind.offer-timeout-ms:250}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<ChatMessage> queue;
+    private Thread flusher;
+    private volatile boolean running;
+    // Timestamp of the first message of the batch being written, null between batches
+    private volatile LocalDateTime inFlightSince;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        flusher = new Thread(this::runFlushLoop, "chat-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+
+        // Anything still queued after the flusher exits is written synchronously before shutdown
+        List<ChatMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            persist(remaining);
+        }
+    }
+
+    // Blocks for up to offer-timeout-ms when the queue is full; after that the caller persists the
+    // message itself, which slows producers down to the speed of the database instead of dropping data
+    public void enqueue(ChatMessage message) {
+        try {
+            if (queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("Write-behind queue full ({} messages), persisting message {} on caller thread", capacity, message.getId());
+        persist(List.of(message));
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    // Timestamp of the oldest accepted message that may not be in chat_messages yet, or null if there
+    // is none; messages are queued in acceptance order, so the batch in flight and the queue head cover it
+    public LocalDateTime getOldestPendingTimestamp() {
+        LocalDateTime oldest = inFlightSince;
+        ChatMessage head = queue.peek();
+        if (head != null && head.getTimestamp() != null && (oldest == null || head.getTimestamp().isBefore(oldest))) {
+            oldest = head.getTimestamp();
+        }
+        return oldest;
+    }
+
+    private void runFlushLoop() {
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                inFlightSince = first.getTimestamp();
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    ChatMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // stop() interrupts us; loop condition decides whether there is still work to do
+            }
+
+            if (!batch.isEmpty()) {
+                persist(batch);
+                batch.clear();
+            }
+            inFlightSince = null;
+        }
+    }
+
+    private void persist(List<ChatMessage> batch) {
+        List<ChatMessage> persisted;
+        LocalDateTime persistedAt = LocalDateTime.now();
+        batch.forEach(message -> message.setPersistedAt(persistedAt));
+        try {
+            // Same collection for every element, so this is a single insertMany round trip
+            mongoTemplate.insert(batch, ChatMessage.class);
+            persisted = new ArrayList<>(batch);
+        } catch (Exception e) {
+            // IDs are assigned before enqueueing, so falling back to per-document upserts is idempotent
+            // for documents the failed insertMany already wrote
+            log.warn("Batch insert of {} messages failed, retrying individually: {}", batch.size(), e.getMessage());
+            persisted = new ArrayList<>(batch.size());
+            for (ChatMessage message : batch) {
+                try {
+                    mongoTemplate.save(message);
+                    persisted.add(message);
+                } catch (Exception ex) {
+                    log.error("Failed to persist message {} in room {}", message.getId(), message.getChatRoomId(), ex);
+                }
+            }
+        }
+
+        if (!persisted.isEmpty()) {
+            // Listeners are @Async (see AsyncConfig), so this only queues one task per listener
+            try {
+                eventPublisher.publishEvent(new MessagesPersistedEvent(persisted, persistedAt));
+            } catch (Exception e) {
+                log.error("MessagesPersistedEvent listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.cluster.ClusterBroadcaster;
+import com.maitriconnect.chat_service.dto.ReactionUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Collects reaction count changes per room and publishes them on the room topic once per window.
+// Only the latest counts per message are kept, so a flurry on one message becomes a single update.
+@Service
+public class ReactionBroadcaster {
+
+    @Autowired
+    private ClusterBroadcaster broadcaster;
+
+    private final Map<String, Map<String, Map<String, Integer>>> pendingByRoom = new ConcurrentHashMap<>();
+
+    public void record(String chatRoomId, String messageId, Map<String, Integer> reactions) {
+        pendingByRoom.compute(chatRoomId, (roomId, pending) -> {
+            Map<String, Map<String, Integer>> updates = pending != null ? pending : new LinkedHashMap<>();
+            updates.put(messageId, reactions);
+            return updates;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${chat.reactions.coalesce-window-ms:100}")
+    public void flush() {
+        for (String roomId : pendingByRoom.keySet()) {
+            Map<String, Map<String, Integer>> updates = pendingByRoom.remove(roomId);
+            if (updates == null || updates.isEmpty()) {
+                continue;
+            }
+
+            List<ReactionUpdate.Item> items = new ArrayList<>(updates.size());
+            updates.forEach((messageId, reactions) -> items.add(new ReactionUpdate.Item(messageId, reactions)));
+
+            broadcaster.convertAndSend("/topic/room." + roomId, new ReactionUpdate(roomId, items));
+        }
+    }
+}
@@ -1,53 +1,101 @@
 package com.maitriconnect.chat_service.service;
 
+import com.maitriconnect.chat_service.dto.ReactionResult;
+import com.maitriconnect.chat_service.event.MessagesPersistedEvent;
 import com.maitriconnect.chat_service.model.ChatMessage;
 import com.maitriconnect.chat_service.model.MessageReaction;
-import com.maitriconnect.chat_service.repository.ChatMessageRepository;
 import com.maitriconnect.chat_service.repository.MessageReactionRepository;
+import com.mongodb.client.result.DeleteResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 
+// Reactions are toggled with the unique (messageId, userId, emoji) index as the guard and the
+// per-emoji count on ChatMessage.reactions adjusted with $inc, so no reaction ever reloads or recounts.
+// The index is declared in RequiredIndexes; without it concurrent toggles could double count.
+// A message still in the write-behind queue has no document to $inc, so once its batch is persisted
+// the counts of any reactions it received meanwhile are recounted from message_reactions.
 @Service
 public class ReactionService {
 
+    private static final Logger log = LoggerFactory.getLogger(ReactionService.class);
+
+    private static final int MAX_RECOUNT_ATTEMPTS = 3;
+
     @Autowired
     private MessageReactionRepository reactionRepository;
 
     @Autowired
-    private ChatMessageRepository chatMessageRepository;
-
-    @Transactional
-    public MessageReaction addReaction(String messageId, String userId, String username, String emoji) {
-        // Check if user already reacted with this emoji
-        Optional<MessageReaction> existing = reactionRepository.findByMessageIdAndUserIdAndEmoji(messageId, userId, emoji);
-        
-        if (existing.isPresent()) {
-            return existing.get(); // Already reacted
-        }
+    private MongoTemplate mongoTemplate;
 
-        // Create new reaction
-        MessageReaction reaction = new MessageReaction(messageId, userId, username, emoji);
-        reaction = reactionRepository.save(reaction);
+    @Autowired
+    private RecentMessageCache recentMessageCache;
 
-        // Update message reactions count
-        updateMessageReactionCounts(messageId);
+    @Autowired
+    private MessageRoomLookup messageRoomLookup;
 
-        return reaction;
+    // Returns the updated counts, or null when the user had already reacted with this emoji
+    public ReactionResult addReaction(String messageId, String userId, String username, String emoji) {
+        validateEmoji(emoji);
+        if (!insertReaction(messageId, userId, username, emoji)) {
+            return null;
+        }
+        return adjustCount(messageId, emoji, 1);
     }
 
-    @Transactional
-    public void removeReaction(String messageId, String userId, String emoji) {
-        Optional<MessageReaction> reaction = reactionRepository.findByMessageIdAndUserIdAndEmoji(messageId, userId, emoji);
-        
-        if (reaction.isPresent()) {
-            reactionRepository.delete(reaction.get());
-            updateMessageReactionCounts(messageId);
+    // Returns the updated counts, or null when there was no such reaction to remove
+    public ReactionResult removeReaction(String messageId, String userId, String emoji) {
+        validateEmoji(emoji);
+        DeleteResult deleted = mongoTemplate.remove(reactionKey(messageId, userId, emoji), MessageReaction.class);
+        if (deleted.getDeletedCount() == 0) {
+            return null;
+        }
+        return adjustCount(messageId, emoji, -1);
+    }
+
+    public ReactionResult toggleReaction(String messageId, String userId, String username, String emoji) {
+        validateEmoji(emoji);
+        // The insert doubles as the existence check: a duplicate key means the reaction is already there
+        if (insertReaction(messageId, userId, username, emoji)) {
+            return adjustCount(messageId, emoji, 1);
+        }
+        return removeReaction(messageId, userId, emoji);
+    }
+
+    @Async
+    @EventListener
+    public void onMessagesPersisted(MessagesPersistedEvent event) {
+        Map<String, ChatMessage> byId = new HashMap<>();
+        for (ChatMessage message : event.getMessages()) {
+            if (message.getId() != null) {
+                byId.put(message.getId(), message);
+            }
+        }
+        if (byId.isEmpty()) {
+            return;
+        }
+        Set<String> reacted = new HashSet<>();
+        for (MessageReaction reaction : reactionRepository.findByMessageIdIn(byId.keySet())) {
+            reacted.add(reaction.getMessageId());
+        }
+        for (String messageId : reacted) {
+            recountPersisted(messageId, byId.get(messageId).getChatRoomId());
         }
     }
 
@@ -58,31 +106,80 @@ public class ReactionService {
     public Map<String, Integer> getReactionCounts(String messageId) {
         List<MessageReaction> reactions = reactionRepository.findByMessageId(messageId);
         Map<String, Integer> counts = new HashMap<>();
-        
+
         for (MessageReaction reaction : reactions) {
             counts.put(reaction.getEmoji(), counts.getOrDefault(reaction.getEmoji(), 0) + 1);
         }
-        
+
         return counts;
     }
 
-    private void updateMessageReactionCounts(String messageId) {
-        ChatMessage message = chatMessageRepository.findById(messageId).orElse(null);
-        if (message != null) {
+    private boolean insertReaction(String messageId, String userId, String username, String emoji) {
+        try {
+            mongoTemplate.insert(new MessageReaction(messageId, userId, username, emoji));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private ReactionResult adjustCount(String messageId, String emoji, int delta) {
+        String field = "reactions." + emoji;
+        Query query = new Query(Criteria.where("_id").is(messageId));
+        query.fields().include("chatRoomId").include("reactions");
+
+        Update update = new Update().inc(field, delta).set("reactionsUpdatedAt", LocalDateTime.now());
+        ChatMessage updated = mongoTemplate.findAndModify(query, update,
+            FindAndModifyOptions.options().returnNew(true), ChatMessage.class);
+        if (updated == null) {
+            // The message is still in the write-behind queue; report counts from the reactions themselves,
+            // onMessagesPersisted stores them once the message is written
+            Map<String, Integer> counts = getReactionCounts(messageId);
+            recentMessageCache.updateReactions(messageRoomLookup.findRoomId(messageId), messageId, counts);
+            return new ReactionResult(messageId, null, counts);
+        }
+
+        Map<String, Integer> counts = new HashMap<>(updated.getReactions());
+        Integer count = counts.get(emoji);
+        if (count != null && count <= 0) {
+            // Drop the emoji once nobody uses it; guarded so a concurrent add in between is not lost
+            mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(messageId).and(field).lte(0)),
+                new Update().unset(field), ChatMessage.class);
+            counts.remove(emoji);
+        }
+        recentMessageCache.updateReactions(updated.getChatRoomId(), messageId, counts);
+        return new ReactionResult(messageId, updated.getChatRoomId(), counts);
+    }
+
+    // Writes the counts unless a $inc landed on the document after they were read; that $inc started
+    // from the empty counts the queued message was stored with, so the recount is retried instead
+    private void recountPersisted(String messageId, String roomId) {
+        for (int attempt = 0; attempt < MAX_RECOUNT_ATTEMPTS; attempt++) {
+            LocalDateTime countedAt = LocalDateTime.now();
             Map<String, Integer> counts = getReactionCounts(messageId);
-            message.setReactions(counts);
-            chatMessageRepository.save(message);
+            Query query = new Query(new Criteria().andOperator(
+                Criteria.where("_id").is(messageId),
+                new Criteria().orOperator(
+                    Criteria.where("reactionsUpdatedAt").exists(false),
+                    Criteria.where("reactionsUpdatedAt").lte(countedAt))));
+            Update update = new Update().set("reactions", counts).set("reactionsUpdatedAt", countedAt);
+            if (mongoTemplate.updateFirst(query, update, ChatMessage.class).getMatchedCount() > 0) {
+                recentMessageCache.updateReactions(roomId, messageId, counts);
+                return;
+            }
         }
+        log.warn("Gave up recounting reactions of persisted message {}", messageId);
+    }
+
+    private Query reactionKey(String messageId, String userId, String emoji) {
+        return new Query(Criteria.where("messageId").is(messageId).and("userId").is(userId).and("emoji").is(emoji));
     }
 
-    @Transactional
-    public void toggleReaction(String messageId, String userId, String username, String emoji) {
-        Optional<MessageReaction> existing = reactionRepository.findByMessageIdAndUserIdAndEmoji(messageId, userId, emoji);
-        
-        if (existing.isPresent()) {
-            removeReaction(messageId, userId, emoji);
-        } else {
-            addReaction(messageId, userId, username, emoji);
+    // The emoji becomes part of a field path, so it must not contain path or operator characters
+    private void validateEmoji(String emoji) {
+        if (emoji == null || emoji.isEmpty() || emoji.contains(".") || emoji.startsWith("$")) {
+            throw new IllegalArgumentException("Invalid emoji: " + emoji);
         }
     }
 }
@@ -0,0 +1,168 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.dto.ReceiptResult;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.RoomReadState;
+import com.maitriconnect.chat_service.repository.RoomReadStateRepository;
+import com.mongodb.client.result.UpdateResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Read state lives in room_read_state, one document per (room, user). A receipt moves that user's
+// watermark forward to the timestamp of the message it names; message status is derived from the
+// watermarks when read. A receipt that does not move the watermark writes nothing and reports no
+// change, so repeated receipts are not re-broadcast.
+@Service
+public class ReadStateService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RoomReadStateRepository roomReadStateRepository;
+
+    @Autowired
+    private RoomMembershipCache roomMembershipCache;
+
+    // upTo is the timestamp of the newest message the user has read
+    public ReceiptResult markRead(String roomId, String userId, LocalDateTime upTo) {
+        return advance(roomId, userId, "lastReadAt", upTo);
+    }
+
+    public ReceiptResult markDelivered(String roomId, String userId, LocalDateTime upTo) {
+        return advance(roomId, userId, "lastDeliveredAt", upTo);
+    }
+
+    private ReceiptResult advance(String roomId, String userId, String watermark, LocalDateTime upTo) {
+        String id = RoomReadState.idFor(roomId, userId);
+        LocalDateTime now = LocalDateTime.now();
+        // Reading implies delivery, so both watermarks move
+        boolean read = watermark.equals("lastReadAt");
+
+        // Only matches while the watermark is behind upTo, so a repeated receipt modifies nothing
+        Query behind = new Query(new Criteria().andOperator(
+            Criteria.where("_id").is(id),
+            new Criteria().orOperator(Criteria.where(watermark).lt(upTo), Criteria.where(watermark).exists(false))));
+        Update update = new Update().set(watermark, upTo).set("updatedAt", now);
+        if (read) {
+            update.max("lastDeliveredAt", upTo);
+        }
+        if (mongoTemplate.updateFirst(behind, update, RoomReadState.class).getModifiedCount() > 0) {
+            return new ReceiptResult(1, upTo);
+        }
+
+        // Either there is no document yet or the watermark is already at or past upTo; only the first inserts
+        Update insert = new Update()
+            .setOnInsert("roomId", roomId)
+            .setOnInsert("userId", userId)
+            .setOnInsert(watermark, upTo)
+            .setOnInsert("updatedAt", now);
+        if (read) {
+            insert.setOnInsert("lastDeliveredAt", upTo);
+        }
+        UpdateResult result = mongoTemplate.upsert(new Query(Criteria.where("_id").is(id)), insert, RoomReadState.class);
+        return new ReceiptResult(result.getUpsertedId() != null ? 1 : 0, upTo);
+    }
+
+    public RoomReadState getReadState(String roomId, String userId) {
+        return roomReadStateRepository.findById(RoomReadState.idFor(roomId, userId))
+            .orElse(new RoomReadState(roomId, userId));
+    }
+
+    // Unread = messages from others after the user's read watermark; a range scan on (chatRoomId, timestamp)
+    public long countUnread(String roomId, String userId) {
+        return countUnread(roomId, userId, getReadState(roomId, userId).getLastReadAt());
+    }
+
+    public long countUnread(String roomId, String userId, LocalDateTime lastReadAt) {
+        return countUnread(roomId, userId, lastReadAt, null);
+    }
+
+    // Only messages persisted at or before persistedUpTo when given; messages stored before persistedAt
+    // existed have none and always count
+    public long countUnread(String roomId, String userId, LocalDateTime lastReadAt, LocalDateTime persistedUpTo) {
+        Criteria criteria = Criteria.where("chatRoomId").is(roomId).and("senderId").ne(userId);
+        if (lastReadAt != null) {
+            criteria.and("timestamp").gt(lastReadAt);
+        }
+        if (persistedUpTo != null) {
+            criteria.orOperator(Criteria.where("persistedAt").lte(persistedUpTo), Criteria.where("persistedAt").exists(false));
+        }
+        return mongoTemplate.count(new Query(criteria), ChatMessage.class);
+    }
+
+    // Fill in status as seen by viewerId: for the viewer's own messages it reflects the other
+    // participants' watermarks (READ once all of them have read it), otherwise the viewer's own
+    public void applyStatuses(List<ChatMessage> messages, String viewerId) {
+        if (viewerId == null || messages.isEmpty()) {
+            return;
+        }
+        Map<String, List<ChatMessage>> byRoom = new LinkedHashMap<>();
+        for (ChatMessage message : messages) {
+            if (message.getChatRoomId() != null) {
+                byRoom.computeIfAbsent(message.getChatRoomId(), id -> new ArrayList<>()).add(message);
+            }
+        }
+        byRoom.forEach((roomId, roomMessages) -> applyRoomStatuses(roomId, roomMessages, viewerId));
+    }
+
+    private void applyRoomStatuses(String roomId, List<ChatMessage> messages, String viewerId) {
+        Map<String, RoomReadState> states = new HashMap<>();
+        for (RoomReadState state : roomReadStateRepository.findByRoomId(roomId)) {
+            states.put(state.getUserId(), state);
+        }
+        Set<String> participants = roomMembershipCache.getParticipants(roomId);
+
+        RoomReadState own = states.getOrDefault(viewerId, new RoomReadState(roomId, viewerId));
+        for (ChatMessage message : messages) {
+            if (viewerId.equals(message.getSenderId())) {
+                message.setStatus(deriveSentStatus(message, participants, states));
+            } else if (own.hasRead(message.getTimestamp())) {
+                message.setStatus(ChatMessage.MessageStatus.READ);
+            } else if (own.hasReceived(message.getTimestamp())) {
+                message.setStatus(ChatMessage.MessageStatus.DELIVERED);
+            } else {
+                message.setStatus(ChatMessage.MessageStatus.SENT);
+            }
+        }
+    }
+
+    private ChatMessage.MessageStatus deriveSentStatus(ChatMessage message, Set<String> participants,
+                                                      Map<String, RoomReadState> states) {
+        boolean anyRecipient = false;
+        boolean allRead = true;
+        boolean allReceived = true;
+        for (String participant : participants) {
+            if (participant.equals(message.getSenderId())) {
+                continue;
+            }
+            anyRecipient = true;
+            RoomReadState state = states.get(participant);
+            if (state == null || !state.hasRead(message.getTimestamp())) {
+                allRead = false;
+            }
+            if (state == null || !state.hasReceived(message.getTimestamp())) {
+                allReceived = false;
+            }
+        }
+        if (!anyRecipient) {
+            return ChatMessage.MessageStatus.SENT;
+        }
+        if (allRead) {
+            return ChatMessage.MessageStatus.READ;
+        }
+        return allReceived ? ChatMessage.MessageStatus.DELIVERED : ChatMessage.MessageStatus.SENT;
+    }
+}
@@ -0,0 +1,271 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The newest messages of recently used rooms, so opening a chat does not need a history query.
+// A room's buffer holds at most messages-per-room messages (oldest dropped first) and rooms are
+// evicted least recently used first once the estimated size of all buffers exceeds max-bytes.
+//
+// A buffer is only served once it has been loaded from Mongo. Messages accepted before that are kept
+// and merged into the load, so messages still in the write-behind queue are not missed.
+//
+// The buffer only sees messages and reactions handled by this node, so it is switched off unless
+// chat.cluster.transport is loopback: with several nodes another node's messages would never reach it.
+@Service
+public class RecentMessageCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RecentMessageCache.class);
+
+    // Same order as room history pages: sequence first, messages stored before sequences by time
+    private static final Comparator<ChatMessage> OLDEST_FIRST = Comparator
+        .comparing(ChatMessage::getSeq, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(ChatMessage::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(ChatMessage::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final boolean enabled;
+    private final int messagesPerRoom;
+    private final long maxBytes;
+
+    // Access-ordered, guarded by itself
+    private final LinkedHashMap<String, RoomBuffer> rooms = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public RecentMessageCache(@Value("${chat.recent-cache.enabled:true}") boolean enabled,
+                              @Value("${chat.recent-cache.messages-per-room:100}") int messagesPerRoom,
+                              @Value("${chat.recent-cache.max-bytes:67108864}") long maxBytes,
+                              @Value("${chat.cluster.transport:loopback}") String clusterTransport,
+                              MeterRegistry meterRegistry) {
+        boolean singleNode = "loopback".equals(clusterTransport);
+        if (enabled && !singleNode) {
+            log.info("Recent message cache disabled: cluster transport {} relays messages it does not see", clusterTransport);
+        }
+        this.enabled = enabled && singleNode;
+        this.messagesPerRoom = messagesPerRoom;
+        this.maxBytes = maxBytes;
+        this.hits = Counter.builder("chat.recent-cache.requests").tag("result", "hit")
+            .description("Newest-page history reads served from memory").register(meterRegistry);
+        this.misses = Counter.builder("chat.recent-cache.requests").tag("result", "miss")
+            .description("Newest-page history reads that went to Mongo").register(meterRegistry);
+        this.evictions = Counter.builder("chat.recent-cache.evictions")
+            .description("Room buffers evicted to stay within the memory budget").register(meterRegistry);
+        Gauge.builder("chat.recent-cache.bytes", this, cache -> cache.getTotalBytes())
+            .description("Estimated size of all cached messages").register(meterRegistry);
+        Gauge.builder("chat.recent-cache.rooms", this, cache -> cache.getRoomCount())
+            .description("Rooms with a buffer").register(meterRegistry);
+    }
+
+    public int getMessagesPerRoom() {
+        return messagesPerRoom;
+    }
+
+    public void append(ChatMessage message) {
+        if (!enabled || message.getChatRoomId() == null || message.getId() == null) {
+            return;
+        }
+        ChatMessage copy = new ChatMessage(message);
+        synchronized (rooms) {
+            RoomBuffer buffer = rooms.computeIfAbsent(message.getChatRoomId(), id -> new RoomBuffer());
+            totalBytes += buffer.add(copy, messagesPerRoom);
+            evictOverBudget();
+        }
+    }
+
+    // Up to count messages newest first, or null when the buffer cannot answer for the whole page.
+    // The messages are copies, so callers may set per-viewer fields on them.
+    public List<ChatMessage> getNewest(String roomId, int count) {
+        if (!enabled || count > messagesPerRoom) {
+            return null;
+        }
+        synchronized (rooms) {
+            RoomBuffer buffer = rooms.get(roomId);
+            if (buffer == null || !buffer.loaded || (buffer.messages.size() < count && !buffer.exhaustive)) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            List<ChatMessage> result = new ArrayList<>(Math.min(count, buffer.messages.size()));
+            Iterator<ChatMessage> newestFirst = buffer.messages.descendingIterator();
+            while (result.size() < count && newestFirst.hasNext()) {
+                result.add(new ChatMessage(newestFirst.next()));
+            }
+            return result;
+        }
+    }
+
+    // Seed a room from Mongo (newest first, up to messages-per-room), keeping anything appended meanwhile
+    public void load(String roomId, List<ChatMessage> newestFirst) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (rooms) {
+            RoomBuffer buffer = rooms.computeIfAbsent(roomId, id -> new RoomBuffer());
+            if (buffer.loaded) {
+                return;
+            }
+            for (ChatMessage message : newestFirst) {
+                totalBytes += buffer.add(new ChatMessage(message), messagesPerRoom);
+            }
+            buffer.loaded = true;
+            // A short result means Mongo has nothing older, unless appends already pushed some out
+            buffer.exhaustive = newestFirst.size() < messagesPerRoom && !buffer.trimmed;
+            evictOverBudget();
+        }
+    }
+
+    // A copy of a cached message of the room, or null when the room's buffer does not hold it
+    public ChatMessage find(String roomId, String messageId) {
+        if (!enabled || roomId == null || messageId == null) {
+            return null;
+        }
+        synchronized (rooms) {
+            RoomBuffer buffer = rooms.get(roomId);
+            ChatMessage cached = buffer != null ? buffer.find(messageId) : null;
+            return cached != null ? new ChatMessage(cached) : null;
+        }
+    }
+
+    public void updateReactions(String roomId, String messageId, Map<String, Integer> reactions) {
+        if (!enabled || roomId == null) {
+            return;
+        }
+        synchronized (rooms) {
+            RoomBuffer buffer = rooms.get(roomId);
+            ChatMessage cached = buffer != null ? buffer.find(messageId) : null;
+            if (cached != null) {
+                long before = estimateBytes(cached);
+                cached.setReactions(new HashMap<>(reactions));
+                long delta = estimateBytes(cached) - before;
+                buffer.bytes += delta;
+                totalBytes += delta;
+            }
+        }
+    }
+
+    // Replace a cached message after its document was rewritten (status, attachments)
+    public void replace(ChatMessage message) {
+        if (!enabled || message.getChatRoomId() == null) {
+            return;
+        }
+        synchronized (rooms) {
+            RoomBuffer buffer = rooms.get(message.getChatRoomId());
+            if (buffer != null) {
+                totalBytes += buffer.replace(new ChatMessage(message));
+            }
+        }
+    }
+
+    public long getTotalBytes() {
+        synchronized (rooms) {
+            return totalBytes;
+        }
+    }
+
+    public int getRoomCount() {
+        synchronized (rooms) {
+            return rooms.size();
+        }
+    }
+
+    private void evictOverBudget() {
+        Iterator<RoomBuffer> eldestFirst = rooms.values().iterator();
+        // Never evict the most recently used room, even if it alone exceeds the budget
+        while (totalBytes > maxBytes && rooms.size() > 1 && eldestFirst.hasNext()) {
+            totalBytes -= eldestFirst.next().bytes;
+            eldestFirst.remove();
+            evictions.increment();
+        }
+    }
+
+    // Rough heap footprint: object and field overhead plus UTF-16 content
+    static long estimateBytes(ChatMessage message) {
+        long bytes = 400;
+        if (message.getContent() != null) {
+            bytes += 2L * message.getContent().length();
+        }
+        if (message.getFileAttachments() != null) {
+            bytes += 80L * message.getFileAttachments().size();
+        }
+        if (message.getReactions() != null) {
+            bytes += 64L * message.getReactions().size();
+        }
+        return bytes;
+    }
+
+    private static final class RoomBuffer {
+        // Oldest first
+        private final ArrayDeque<ChatMessage> messages = new ArrayDeque<>();
+        private long bytes;
+        private boolean loaded;
+        private boolean exhaustive;
+        private boolean trimmed;
+
+        // Returns the change in estimated bytes
+        private long add(ChatMessage message, int capacity) {
+            if (find(message.getId()) != null) {
+                return 0;
+            }
+            long delta = estimateBytes(message);
+            ChatMessage newest = messages.peekLast();
+            if (newest == null || OLDEST_FIRST.compare(newest, message) <= 0) {
+                messages.addLast(message);
+            } else {
+                // Out of order (a DB load, or two messages accepted at once); rare, so a sorted rebuild is fine
+                List<ChatMessage> sorted = new ArrayList<>(messages);
+                sorted.add(message);
+                sorted.sort(OLDEST_FIRST);
+                messages.clear();
+                messages.addAll(sorted);
+            }
+            while (messages.size() > capacity) {
+                delta -= estimateBytes(messages.removeFirst());
+                trimmed = true;
+                exhaustive = false;
+            }
+            bytes += delta;
+            return delta;
+        }
+
+        private long replace(ChatMessage message) {
+            ChatMessage current = find(message.getId());
+            if (current == null) {
+                return 0;
+            }
+            long delta = estimateBytes(message) - estimateBytes(current);
+            List<ChatMessage> updated = new ArrayList<>(messages);
+            updated.set(updated.indexOf(current), message);
+            messages.clear();
+            messages.addAll(updated);
+            bytes += delta;
+            return delta;
+        }
+
+        private ChatMessage find(String messageId) {
+            for (ChatMessage message : messages) {
+                if (message.getId().equals(messageId)) {
+                    return message;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.ChatRoom;
+import com.maitriconnect.chat_service.repository.ChatRoomRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// In-memory membership index: roomId -> room (with its participants) and userId -> roomIds, both
+// bounded LRUs filled on first use. Rooms created on this node are added to both sides right away.
+// A user's room list is reloaded after user-rooms-ttl-ms so rooms created on other nodes show up.
+//
+// Cached rooms are snapshots nobody else holds: callers get copies, and recordLastMessage swaps in an
+// updated copy instead of changing the one readers may be looking at. Participants never change after
+// creation, so on a single node a room stays valid; with any other cluster transport its last message
+// is also written by other nodes, so rooms are reloaded after room-ttl-ms as well.
+@Service
+public class RoomMembershipCache {
+
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+
+    private final long userRoomsTtlNanos;
+    private final long roomTtlNanos;
+
+    // Both guarded by rooms
+    private final Map<String, CachedRoom> rooms;
+    private final Map<String, UserRooms> roomIdsByUser;
+
+    public RoomMembershipCache(@Value("${chat.membership.max-rooms:50000}") int maxRooms,
+                               @Value("${chat.membership.max-users:50000}") int maxUsers,
+                               @Value("${chat.membership.user-rooms-ttl-ms:60000}") long userRoomsTtlMs,
+                               @Value("${chat.membership.room-ttl-ms:60000}") long roomTtlMs,
+                               @Value("${chat.cluster.transport:loopback}") String clusterTransport) {
+        this.userRoomsTtlNanos = TimeUnit.MILLISECONDS.toNanos(userRoomsTtlMs);
+        this.roomTtlNanos = "loopback".equals(clusterTransport) ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(roomTtlMs);
+        this.rooms = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRoom> eldest) {
+                return size() > maxRooms;
+            }
+        };
+        this.roomIdsByUser = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserRooms> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    public ChatRoom getRoom(String roomId) {
+        ChatRoom snapshot = snapshot(roomId);
+        return snapshot != null ? new ChatRoom(snapshot) : null;
+    }
+
+    // Rooms for the given ids, loading the ones not cached in one query
+    public List<ChatRoom> getRooms(Collection<String> roomIds) {
+        List<ChatRoom> result = new ArrayList<>(roomIds.size());
+        Set<String> missing = new LinkedHashSet<>();
+        synchronized (rooms) {
+            for (String roomId : roomIds) {
+                ChatRoom cached = cached(roomId);
+                if (cached != null) {
+                    result.add(new ChatRoom(cached));
+                } else {
+                    missing.add(roomId);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (ChatRoom room : chatRoomRepository.findAllById(missing)) {
+                synchronized (rooms) {
+                    store(room);
+                }
+                result.add(room);
+            }
+        }
+        return result;
+    }
+
+    // A read-only view of the snapshot's participants, without copying the room
+    public Set<String> getParticipants(String roomId) {
+        ChatRoom room = snapshot(roomId);
+        return room != null && room.getParticipants() != null ? Collections.unmodifiableSet(room.getParticipants()) : Set.of();
+    }
+
+    public boolean isMember(String roomId, String userId) {
+        return userId != null && getParticipants(roomId).contains(userId);
+    }
+
+    public List<ChatRoom> getUserRooms(String userId) {
+        Set<String> roomIds = null;
+        synchronized (rooms) {
+            UserRooms cached = roomIdsByUser.get(userId);
+            if (cached != null && System.nanoTime() - cached.loadedAt < userRoomsTtlNanos) {
+                roomIds = new LinkedHashSet<>(cached.roomIds);
+            }
+        }
+        if (roomIds != null) {
+            return getRooms(roomIds);
+        }
+
+        List<ChatRoom> loaded = chatRoomRepository.findByParticipantsContaining(userId);
+        Set<String> ids = new HashSet<>();
+        synchronized (rooms) {
+            for (ChatRoom room : loaded) {
+                store(room);
+                ids.add(room.getId());
+            }
+            roomIdsByUser.put(userId, new UserRooms(ids, System.nanoTime()));
+        }
+        return loaded;
+    }
+
+    // Call after a room was created; cached user lists of its participants gain the room
+    public void onRoomSaved(ChatRoom room) {
+        if (room.getId() == null) {
+            return;
+        }
+        synchronized (rooms) {
+            rooms.put(room.getId(), new CachedRoom(new ChatRoom(room), System.nanoTime()));
+            if (room.getParticipants() != null) {
+                for (String participant : room.getParticipants()) {
+                    UserRooms cached = roomIdsByUser.get(participant);
+                    if (cached != null) {
+                        cached.roomIds.add(room.getId());
+                    }
+                }
+            }
+        }
+    }
+
+    // Keep the cached room's last message current; the document itself is updated by RoomSummaryUpdater
+    public void recordLastMessage(ChatMessage message) {
+        if (message.getChatRoomId() == null || message.getTimestamp() == null) {
+            return;
+        }
+        synchronized (rooms) {
+            CachedRoom cached = rooms.get(message.getChatRoomId());
+            if (cached != null && (cached.room().getLastMessageTime() == null
+                    || !message.getTimestamp().isBefore(cached.room().getLastMessageTime()))) {
+                ChatRoom updated = new ChatRoom(cached.room());
+                updated.setLastMessage(message.getContent());
+                updated.setLastMessageTime(message.getTimestamp());
+                rooms.put(updated.getId(), new CachedRoom(updated, cached.loadedAt()));
+            }
+        }
+    }
+
+    // The cached snapshot, loaded if missing or expired; never handed out as is
+    private ChatRoom snapshot(String roomId) {
+        if (roomId == null) {
+            return null;
+        }
+        synchronized (rooms) {
+            ChatRoom cached = cached(roomId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ChatRoom loaded = chatRoomRepository.findById(roomId).orElse(null);
+        if (loaded == null) {
+            return null;
+        }
+        synchronized (rooms) {
+            return store(loaded);
+        }
+    }
+
+    // Guarded by rooms; drops the entry once it is older than room-ttl-ms
+    private ChatRoom cached(String roomId) {
+        CachedRoom cached = rooms.get(roomId);
+        if (cached == null) {
+            return null;
+        }
+        if (System.nanoTime() - cached.loadedAt() >= roomTtlNanos) {
+            rooms.remove(roomId);
+            return null;
+        }
+        return cached.room();
+    }
+
+    // Guarded by rooms; keeps a current entry (it may hold a newer last message than the database)
+    private ChatRoom store(ChatRoom loaded) {
+        ChatRoom current = cached(loaded.getId());
+        if (current != null) {
+            return current;
+        }
+        ChatRoom snapshot = new ChatRoom(loaded);
+        rooms.put(snapshot.getId(), new CachedRoom(snapshot, System.nanoTime()));
+        return snapshot;
+    }
+
+    private record CachedRoom(ChatRoom room, long loadedAt) {
+    }
+
+    private static final class UserRooms {
+        private final Set<String> roomIds;
+        private final long loadedAt;
+
+        private UserRooms(Set<String> roomIds, long loadedAt) {
+            this.roomIds = roomIds;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
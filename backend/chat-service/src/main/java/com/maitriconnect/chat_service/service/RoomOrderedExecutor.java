@@ -0,0 +1,185 @@
+package com.maitriconnect.chat_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs room work in order per room and in parallel across rooms. Each room with work pending gets
+// its own FIFO queue, drained by at most one task at a time on the client inbound channel's executor
+// (see WebSocketConfig), so two frames for a room run one after the other in submission order while
+// any number of rooms run at once, as many as that executor allows, virtual threads included. A slow
+// room only holds up itself. Inbound frames of a session reach the controller in receive order, so a
+// user's messages keep their order too.
+//
+// A room's queue holds at most queue-capacity tasks; past that new tasks are rejected right away
+// instead of blocking the submitter, which may itself be the thread the room is waiting for. Queue
+// depth, wait and run time are published, and tasks slower than slow-task-ms are logged with their room.
+@Service
+public class RoomOrderedExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomOrderedExecutor.class);
+
+    // Tasks a room runs before giving its thread back to other work
+    private static final int DRAIN_BATCH = 64;
+
+    private final Executor executor;
+    private final int queueCapacity;
+    private final long slowTaskNanos;
+    // Rooms with queued or running tasks; an entry is removed once its last task finished
+    private final Map<String, RoomQueue> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Counter rejected;
+    private final Timer wait;
+    private final Timer run;
+    private volatile boolean running = true;
+
+    public RoomOrderedExecutor(@Qualifier("clientInboundChannelExecutor") Executor executor,
+                               @Value("${chat.lanes.queue-capacity:1000}") int queueCapacity,
+                               @Value("${chat.lanes.slow-task-ms:500}") long slowTaskMs,
+                               MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.slowTaskNanos = TimeUnit.MILLISECONDS.toNanos(slowTaskMs);
+        this.rejected = Counter.builder("chat.lanes.rejected")
+            .description("Room tasks dropped because the room's queue was full").register(meterRegistry);
+        this.wait = Timer.builder("chat.lanes.wait")
+            .description("Time room tasks spent queued behind the room's earlier tasks").register(meterRegistry);
+        this.run = Timer.builder("chat.lanes.run")
+            .description("Time room tasks took to run").register(meterRegistry);
+        Gauge.builder("chat.lanes.queued", queued, AtomicInteger::get)
+            .description("Room tasks waiting to run").register(meterRegistry);
+        Gauge.builder("chat.lanes.rooms", rooms, Map::size)
+            .description("Rooms with queued or running tasks").register(meterRegistry);
+    }
+
+    // Runs the task after everything submitted for the room before it
+    public void execute(String roomId, Runnable task) {
+        if (roomId == null) {
+            task.run();
+            return;
+        }
+        if (!running) {
+            rejected.increment();
+            throw new MessageDeliveryException("Shutting down; dropped a task for room " + roomId);
+        }
+        // Counted under the map's lock for the room, so a queue is never dropped while a task is on its way in
+        RoomQueue room = rooms.compute(roomId, (id, existing) -> {
+            RoomQueue queue = existing != null ? existing : new RoomQueue(id);
+            queue.pending++;
+            return queue;
+        });
+        if (!room.tasks.offer(new Task(task, System.nanoTime()))) {
+            release(room);
+            rejected.increment();
+            throw new MessageDeliveryException("Queue of room " + roomId + " is full; dropped a task");
+        }
+        queued.incrementAndGet();
+        room.schedule();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!rooms.isEmpty() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (!rooms.isEmpty()) {
+            log.warn("Stopped with tasks of {} rooms still queued", rooms.size());
+        }
+    }
+
+    private void release(RoomQueue room) {
+        rooms.computeIfPresent(room.roomId, (id, current) -> {
+            if (current != room) {
+                return current;
+            }
+            return --current.pending == 0 ? null : current;
+        });
+    }
+
+    private record Task(Runnable runnable, long enqueuedAt) {
+    }
+
+    private final class RoomQueue implements Runnable {
+        private final String roomId;
+        private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>(queueCapacity);
+        // Set while a drain of this queue is submitted or running, so tasks never run side by side
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Tasks submitted and not finished yet, guarded by the rooms map
+        private int pending;
+
+        private RoomQueue(String roomId) {
+            this.roomId = roomId;
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // The executor is shutting down; run what is queued here rather than lose it
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Task task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                queued.decrementAndGet();
+                runTask(task);
+                release(this);
+            }
+            scheduled.set(false);
+            // A task queued after the last poll found the flag still set and left the drain to us
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void runTask(Task task) {
+            long started = System.nanoTime();
+            wait.record(started - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                task.runnable().run();
+            } catch (Exception e) {
+                log.error("Room task failed for room {}", roomId, e);
+            }
+            long took = System.nanoTime() - started;
+            run.record(took, TimeUnit.NANOSECONDS);
+            if (took > slowTaskNanos) {
+                log.warn("Room task for room {} took {} ms ({} queued behind it)",
+                    roomId, TimeUnit.NANOSECONDS.toMillis(took), tasks.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.model.RoomSequence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Hands out per-room message sequence numbers (1, 2, 3, ...) from memory. Sequences are leased from
+// the room's counter in room_sequences block-size at a time with one findAndModify, so a busy room
+// costs one round-trip per block instead of one per message, and a restarted node never reuses one.
+//
+// On shutdown the unused rest of each block is handed back when no other node has leased since, so
+// a room's sequence stays gap-free across restarts; only a crash skips the rest of a block. Nodes
+// that accept messages for the same room would lease separate blocks and hand out interleaved
+// sequences, so with any cluster transport other than loopback the block size is forced to 1.
+@Service
+public class RoomSequenceAllocator {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomSequenceAllocator.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${chat.sequence.block-size:100}")
+    private int blockSize;
+
+    @Value("${chat.cluster.transport:loopback}")
+    private String clusterTransport;
+
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void limitBlockSizeWhenClustered() {
+        if (!"loopback".equals(clusterTransport) && blockSize > 1) {
+            log.warn("chat.sequence.block-size {} ignored: cluster transport {} needs a block size of 1 to keep room sequences in order",
+                blockSize, clusterTransport);
+            blockSize = 1;
+        }
+    }
+
+    public long next(String roomId) {
+        Block block = blocks.computeIfAbsent(roomId, id -> new Block());
+        synchronized (block) {
+            if (block.next > block.end) {
+                lease(roomId, block);
+            }
+            return block.next++;
+        }
+    }
+
+    private void lease(String roomId, Block block) {
+        RoomSequence counter = mongoTemplate.findAndModify(
+            new Query(Criteria.where("_id").is(roomId)),
+            new Update().inc("leased", blockSize),
+            FindAndModifyOptions.options().upsert(true).returnNew(true),
+            RoomSequence.class);
+        block.end = counter.getLeased();
+        block.next = block.end - blockSize + 1;
+    }
+
+    @PreDestroy
+    public void releaseUnused() {
+        int released = 0;
+        for (Map.Entry<String, Block> entry : blocks.entrySet()) {
+            Block block = entry.getValue();
+            synchronized (block) {
+                if (block.next > block.end) {
+                    continue;
+                }
+                try {
+                    // Only if this node's block is still the newest lease of the room
+                    long updated = mongoTemplate.updateFirst(
+                        new Query(Criteria.where("_id").is(entry.getKey()).and("leased").is(block.end)),
+                        new Update().set("leased", block.next - 1),
+                        RoomSequence.class).getModifiedCount();
+                    released += (int) updated;
+                    block.end = block.next - 1;
+                } catch (Exception e) {
+                    log.warn("Could not release unused sequences of room {}", entry.getKey(), e);
+                }
+            }
+        }
+        if (released > 0) {
+            log.info("Released unused sequence blocks of {} rooms", released);
+        }
+    }
+
+    private static final class Block {
+        private long next = 1;
+        // Last sequence of the leased block; next > end means nothing is leased
+        private long end;
+    }
+}
@@ -0,0 +1,137 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.dto.ChatRoomResponse;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.ChatRoom;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the newest message per room in memory and writes it to chat_rooms with a targeted update
+// once the room has been idle for idle-ms, or at the latest max-delay-ms after the first pending message.
+// A burst of N messages in a room therefore costs one room write instead of N read-modify-writes.
+@Service
+public class RoomSummaryUpdater {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomSummaryUpdater.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${chat.room-summary.idle-ms:250}")
+    private long idleMs;
+
+    @Value("${chat.room-summary.max-delay-ms:1000}")
+    private long maxDelayMs;
+
+    private final Map<String, PendingSummary> pending = new ConcurrentHashMap<>();
+
+    public void record(ChatMessage message) {
+        if (message.getChatRoomId() == null || message.getTimestamp() == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        pending.compute(message.getChatRoomId(), (roomId, current) -> {
+            if (current == null) {
+                return new PendingSummary(message.getContent(), message.getTimestamp(), now, now);
+            }
+            // Keep the newest message even if persistence completed out of order
+            if (message.getTimestamp().isBefore(current.lastMessageTime)) {
+                return new PendingSummary(current.lastMessage, current.lastMessageTime, current.firstRecordedAt, now);
+            }
+            return new PendingSummary(message.getContent(), message.getTimestamp(), current.firstRecordedAt, now);
+        });
+    }
+
+    // Room lists read from Mongo may lag the pending summary by up to max-delay-ms, so overlay it
+    public void applyPending(ChatRoomResponse response) {
+        PendingSummary summary = pending.get(response.getId());
+        if (summary != null && (response.getLastMessageTime() == null
+                || !summary.lastMessageTime.isBefore(response.getLastMessageTime()))) {
+            response.setLastMessage(summary.lastMessage);
+            response.setLastMessageTime(summary.lastMessageTime);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.room-summary.tick-ms:100}")
+    public void flushDue() {
+        flush(false);
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        flush(true);
+    }
+
+    private void flush(boolean force) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMs);
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+
+        BulkOperations bulk = null;
+        int count = 0;
+        for (Map.Entry<String, PendingSummary> entry : pending.entrySet()) {
+            PendingSummary summary = entry.getValue();
+            boolean due = force
+                || now - summary.lastRecordedAt >= idleNanos
+                || now - summary.firstRecordedAt >= maxDelayNanos;
+            // remove(key, value) fails if record() replaced the entry meanwhile; it is picked up next tick
+            if (!due || !pending.remove(entry.getKey(), summary)) {
+                continue;
+            }
+
+            if (bulk == null) {
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatRoom.class);
+            }
+            // Only move lastMessage forward, so a stale summary from a slower writer never wins
+            Query query = new Query(Criteria.where("_id").is(entry.getKey())
+                .orOperator(
+                    Criteria.where("lastMessageTime").is(null),
+                    Criteria.where("lastMessageTime").lt(summary.lastMessageTime)));
+            Update update = new Update()
+                .set("lastMessage", summary.lastMessage)
+                .max("lastMessageTime", summary.lastMessageTime);
+            bulk.updateOne(query, update);
+            count++;
+        }
+
+        if (bulk != null) {
+            try {
+                bulk.execute();
+            } catch (Exception e) {
+                log.error("Failed to flush {} room summaries", count, e);
+            }
+        }
+    }
+
+    private static final class PendingSummary {
+        private final String lastMessage;
+        private final LocalDateTime lastMessageTime;
+        private final long firstRecordedAt;
+        private final long lastRecordedAt;
+
+        private PendingSummary(String lastMessage, LocalDateTime lastMessageTime, long firstRecordedAt, long lastRecordedAt) {
+            this.lastMessage = lastMessage;
+            this.lastMessageTime = lastMessageTime;
+            this.firstRecordedAt = firstRecordedAt;
+            this.lastRecordedAt = lastRecordedAt;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.dto.ChatRoomResponse;
+import com.maitriconnect.chat_service.dto.ReactionUpdate;
+import com.maitriconnect.chat_service.dto.SyncResponse;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.ChatRoom;
+import com.maitriconnect.chat_service.model.RoomReadState;
+import com.maitriconnect.chat_service.repository.ChatMessageRepository;
+import com.maitriconnect.chat_service.repository.ChatRoomRepository;
+import com.maitriconnect.chat_service.repository.RoomReadStateRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Delta sync for reconnecting clients: one call returns what changed in the user's rooms since the
+// client's token, using the membership cache for the room list and one indexed range query per kind
+// of change, instead of a room list reload plus a history page per room.
+//
+// A token is a point in time. Changes are selected with ">= token", and a new token is the earlier
+// of now and the oldest message still in the write-behind queue, less safety-margin-ms for clock skew
+// between nodes. A message accepted before the token but stored after it can therefore not be missed.
+//
+// Only this node's queue is known, so that guarantee is single-node. With several nodes a message
+// another node accepted is covered only while it is stored within safety-margin-ms; keep the margin
+// well above chat.write-behind.flush-interval-ms. A node whose queue backs up for longer (e.g. while
+// MongoDB is unavailable) can store messages behind tokens already handed out, and clients only see
+// them on their next reset.
+@Service
+public class SyncService {
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+
+    @Autowired
+    private RoomReadStateRepository roomReadStateRepository;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Autowired
+    private RoomMembershipCache roomMembershipCache;
+
+    @Autowired
+    private MessageWriteBehindQueue messageWriteBehindQueue;
+
+    @Value("${chat.sync.max-messages:500}")
+    private int maxMessages;
+
+    @Value("${chat.sync.max-reactions:1000}")
+    private int maxReactions;
+
+    @Value("${chat.sync.max-age-ms:604800000}")
+    private long maxAgeMs;
+
+    @Value("${chat.sync.safety-margin-ms:2000}")
+    private long safetyMarginMs;
+
+    public SyncResponse sync(String userId, String token) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = nextToken(now);
+        LocalDateTime since = decode(token);
+        if (since == null || since.isBefore(now.minus(maxAgeMs, ChronoUnit.MILLIS))) {
+            return SyncResponse.reset(encode(next));
+        }
+
+        // Rooms created since the token are looked up directly: the cached room list may not have a room
+        // created on another node yet
+        Map<String, ChatRoom> rooms = new LinkedHashMap<>();
+        for (ChatRoom room : chatService.getUserChatRooms(userId)) {
+            rooms.put(room.getId(), room);
+        }
+        Set<String> createdIds = new LinkedHashSet<>();
+        for (ChatRoom room : chatRoomRepository.findByParticipantsContainingAndCreatedAtGreaterThanEqual(userId, since)) {
+            createdIds.add(room.getId());
+            if (rooms.putIfAbsent(room.getId(), room) == null) {
+                roomMembershipCache.onRoomSaved(room);
+            }
+        }
+        if (rooms.isEmpty()) {
+            return new SyncResponse(encode(next), false, false, List.of(), List.of(), List.of(), List.of());
+        }
+
+        List<ChatMessage> reactionChanges = chatMessageRepository.findReactionsChangedSince(rooms.keySet(), since, maxReactions + 1);
+        if (reactionChanges.size() > maxReactions) {
+            // Too much changed for a delta to be cheaper than a reload
+            return SyncResponse.reset(encode(next));
+        }
+
+        List<ChatMessage> messages = chatMessageRepository.findRoomsSince(rooms.keySet(), since, maxMessages + 1);
+        boolean hasMore = messages.size() > maxMessages;
+        if (hasMore) {
+            messages = new ArrayList<>(messages.subList(0, maxMessages));
+            // Resume from the last returned message; receipts and reactions below are already complete
+            LocalDateTime last = messages.get(messages.size() - 1).getTimestamp();
+            if (last.isBefore(next)) {
+                next = last;
+            }
+        }
+        readStateService.applyStatuses(messages, userId);
+
+        List<RoomReadState> receipts = roomReadStateRepository.findByRoomIdInAndUpdatedAtGreaterThanEqual(rooms.keySet(), since);
+
+        List<ChatRoomResponse> changedRooms = new ArrayList<>();
+        for (ChatRoom room : rooms.values()) {
+            ChatRoomResponse response = chatService.convertToChatRoomResponse(room, userId);
+            if (createdIds.contains(room.getId())
+                    || (response.getLastMessageTime() != null && !response.getLastMessageTime().isBefore(since))) {
+                changedRooms.add(response);
+            }
+        }
+
+        return new SyncResponse(encode(next), false, hasMore, changedRooms, messages, groupReactions(reactionChanges), receipts);
+    }
+
+    // Other nodes' write-behind queues are not visible here; see the class comment
+    private LocalDateTime nextToken(LocalDateTime now) {
+        LocalDateTime next = now;
+        LocalDateTime pending = messageWriteBehindQueue.getOldestPendingTimestamp();
+        if (pending != null && pending.isBefore(next)) {
+            next = pending;
+        }
+        return next.minus(safetyMarginMs, ChronoUnit.MILLIS);
+    }
+
+    private List<ReactionUpdate> groupReactions(List<ChatMessage> changed) {
+        Map<String, List<ReactionUpdate.Item>> byRoom = new LinkedHashMap<>();
+        for (ChatMessage message : changed) {
+            byRoom.computeIfAbsent(message.getChatRoomId(), id -> new ArrayList<>())
+                .add(new ReactionUpdate.Item(message.getId(), message.getReactions()));
+        }
+        List<ReactionUpdate> updates = new ArrayList<>(byRoom.size());
+        byRoom.forEach((roomId, items) -> updates.add(new ReactionUpdate(roomId, items)));
+        return updates;
+    }
+
+    private static String encode(LocalDateTime time) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(time.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Null for no token; a malformed token is treated like no token so the client simply resets
+    private static LocalDateTime decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.cluster.ClusterBroadcaster;
+import com.maitriconnect.chat_service.dto.TypingSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// In-memory "who is typing" state per room. Client typing frames only update this state; each tick
+// publishes one snapshot per room whose set of typers changed, and typers that stop sending frames
+// expire after ttl-ms without needing a stop frame. Nothing here touches Mongo.
+@Service
+public class TypingTracker {
+
+    @Autowired
+    private ClusterBroadcaster broadcaster;
+
+    @Value("${chat.typing.ttl-ms:5000}")
+    private long ttlMs;
+
+    private final Map<String, RoomTyping> rooms = new ConcurrentHashMap<>();
+    private final Counter framesReceived;
+    private final Counter framesBroadcast;
+
+    public TypingTracker(MeterRegistry meterRegistry) {
+        this.framesReceived = Counter.builder("chat.typing.frames")
+            .tag("direction", "received")
+            .description("Typing and stop-typing frames received from clients")
+            .register(meterRegistry);
+        this.framesBroadcast = Counter.builder("chat.typing.frames")
+            .tag("direction", "broadcast")
+            .description("Typing snapshots broadcast to room topics")
+            .register(meterRegistry);
+        Gauge.builder("chat.typing.rooms", rooms, Map::size)
+            .description("Rooms with at least one active typer")
+            .register(meterRegistry);
+    }
+
+    public void typing(String roomId, String userId) {
+        framesReceived.increment();
+        if (roomId == null || userId == null) {
+            return;
+        }
+        long expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        // compute() keeps this atomic with the idle-room removal in broadcastChanges()
+        rooms.compute(roomId, (id, room) -> {
+            RoomTyping typing = room != null ? room : new RoomTyping();
+            // Repeated keystrokes only extend the expiry; the snapshot changes only for a new typer
+            if (typing.typers.put(userId, expiresAt) == null) {
+                typing.dirty = true;
+            }
+            return typing;
+        });
+    }
+
+    public void stopTyping(String roomId, String userId) {
+        framesReceived.increment();
+        if (roomId == null || userId == null) {
+            return;
+        }
+        RoomTyping room = rooms.get(roomId);
+        if (room != null && room.typers.remove(userId) != null) {
+            room.dirty = true;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.typing.broadcast-interval-ms:300}")
+    public void broadcastChanges() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, RoomTyping> entry : rooms.entrySet()) {
+            RoomTyping room = entry.getValue();
+
+            Iterator<Map.Entry<String, Long>> typers = room.typers.entrySet().iterator();
+            while (typers.hasNext()) {
+                Map.Entry<String, Long> typer = typers.next();
+                if (typer.getValue() - now <= 0) {
+                    typers.remove();
+                    room.dirty = true;
+                }
+            }
+
+            if (room.dirty) {
+                room.dirty = false;
+                List<String> userIds = new ArrayList<>(room.typers.keySet());
+                Collections.sort(userIds);
+
+                broadcaster.convertAndSendTransient("/topic/room." + entry.getKey(), new TypingSnapshot(entry.getKey(), userIds));
+                framesBroadcast.increment();
+            } else if (room.typers.isEmpty()) {
+                rooms.computeIfPresent(entry.getKey(), (id, current) ->
+                    current.typers.isEmpty() && !current.dirty ? null : current);
+            }
+        }
+    }
+
+    private static final class RoomTyping {
+        private final Map<String, Long> typers = new ConcurrentHashMap<>();
+        private volatile boolean dirty;
+    }
+}
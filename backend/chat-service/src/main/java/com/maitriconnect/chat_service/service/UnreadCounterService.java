@@ -0,0 +1,197 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.dto.InboxBadgeResponse;
+import com.maitriconnect.chat_service.event.MessagesPersistedEvent;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.ChatRoom;
+import com.maitriconnect.chat_service.model.RoomReadState;
+import com.maitriconnect.chat_service.model.UnreadCounter;
+import com.maitriconnect.chat_service.repository.RoomReadStateRepository;
+import com.maitriconnect.chat_service.repository.UnreadCounterRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Materialized unread counts in unread_counters. Messages are broadcast before they are persisted, so
+// a batch can land after its reader has already read it. Counters are therefore bumped once per
+// persisted batch only for messages past each participant's read watermark, and a read recounts the
+// room past the new watermark instead of zeroing it. Every message carries the persistedAt it was
+// written with; a recount counts only messages persisted at or before its recountedAt, and a batch
+// is added only to counters recounted before its persistedAt, so each message is counted by exactly
+// one of them. This compares server clocks, so clock skew between nodes is left to the
+// reconciliation job.
+@Service
+public class UnreadCounterService {
+
+    private static final Logger log = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UnreadCounterRepository unreadCounterRepository;
+
+    @Autowired
+    private RoomMembershipCache roomMembershipCache;
+
+    @Autowired
+    private RoomReadStateRepository roomReadStateRepository;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Async
+    @EventListener
+    public void onMessagesPersisted(MessagesPersistedEvent event) {
+        Map<String, List<ChatMessage>> byRoom = new LinkedHashMap<>();
+        for (ChatMessage message : event.getMessages()) {
+            if (message.getChatRoomId() != null && message.getSenderId() != null) {
+                byRoom.computeIfAbsent(message.getChatRoomId(), id -> new ArrayList<>()).add(message);
+            }
+        }
+        if (byRoom.isEmpty()) {
+            return;
+        }
+        // roomId:userId -> read watermark
+        Map<String, LocalDateTime> lastRead = new HashMap<>();
+        for (RoomReadState state : roomReadStateRepository.findByRoomIdIn(byRoom.keySet())) {
+            lastRead.put(state.getId(), state.getLastReadAt());
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UnreadCounter.class);
+        int operations = 0;
+        LocalDateTime now = LocalDateTime.now();
+        for (ChatRoom room : roomMembershipCache.getRooms(byRoom.keySet())) {
+            for (String participant : room.getParticipants()) {
+                LocalDateTime readUpTo = lastRead.get(RoomReadState.idFor(room.getId(), participant));
+                long increment = 0;
+                for (ChatMessage message : byRoom.get(room.getId())) {
+                    // Your own messages never count as unread for you, nor do ones you read before they were stored
+                    if (!participant.equals(message.getSenderId())
+                            && (readUpTo == null || message.getTimestamp() == null || message.getTimestamp().isAfter(readUpTo))) {
+                        increment++;
+                    }
+                }
+                if (increment > 0) {
+                    bulk.upsert(notRecountedSince(participant, room.getId(), event.getPersistedAt()), new Update()
+                        .inc("count", increment)
+                        .set("updatedAt", now)
+                        .setOnInsert("userId", participant)
+                        .setOnInsert("roomId", room.getId()));
+                    operations++;
+                }
+            }
+        }
+
+        if (operations > 0) {
+            try {
+                bulk.execute();
+            } catch (BulkOperationException e) {
+                // A duplicate key is a counter recounted after this batch was stored, which already includes it
+                if (e.getErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) {
+                    log.error("Failed to update unread counters for {} rooms", byRoom.size(), e);
+                }
+            } catch (Exception e) {
+                log.error("Failed to update unread counters for {} rooms", byRoom.size(), e);
+            }
+        }
+    }
+
+    // Recounts the room past the reader's new watermark; messages after it that are already stored stay
+    // unread, later ones are added as their batches are persisted
+    public void reset(String userId, String roomId, LocalDateTime readUpTo) {
+        // The cutoff the increments check: later batches are added by onMessagesPersisted, not counted here
+        LocalDateTime recountedAt = LocalDateTime.now();
+        long count = readStateService.countUnread(roomId, userId, readUpTo, recountedAt);
+        mongoTemplate.upsert(byId(userId, roomId), new Update()
+            .set("count", count)
+            .set("recountedAt", recountedAt)
+            .set("updatedAt", LocalDateTime.now())
+            .setOnInsert("userId", userId)
+            .setOnInsert("roomId", roomId), UnreadCounter.class);
+    }
+
+    // All of a user's room counts in one indexed lookup
+    public InboxBadgeResponse getInbox(String userId) {
+        Map<String, Long> rooms = new LinkedHashMap<>();
+        long total = 0;
+        for (UnreadCounter counter : unreadCounterRepository.findByUserId(userId)) {
+            if (counter.getCount() > 0) {
+                rooms.put(counter.getRoomId(), counter.getCount());
+                total += counter.getCount();
+            }
+        }
+        return new InboxBadgeResponse(total, rooms);
+    }
+
+    // Counters can still drift (a failed bulk write, or clock skew between nodes), so they are periodically
+    // recomputed as range counts past each participant's read watermark
+    @Scheduled(cron = "${chat.unread.reconcile-cron:0 30 3 * * *}")
+    public void rebuildAll() {
+        long start = System.currentTimeMillis();
+        int rooms = 0;
+        try (Stream<ChatRoom> stream = mongoTemplate.stream(new Query(), ChatRoom.class)) {
+            for (ChatRoom room : (Iterable<ChatRoom>) stream::iterator) {
+                rebuildRoom(room);
+                rooms++;
+            }
+        }
+        log.info("Rebuilt unread counters for {} rooms in {} ms", rooms, System.currentTimeMillis() - start);
+    }
+
+    public void rebuildRoom(ChatRoom room) {
+        if (room.getParticipants() == null || room.getParticipants().isEmpty()) {
+            return;
+        }
+        Map<String, LocalDateTime> lastReadByUser = new HashMap<>();
+        List<RoomReadState> states = roomReadStateRepository.findByRoomId(room.getId());
+        for (RoomReadState state : states) {
+            lastReadByUser.put(state.getUserId(), state.getLastReadAt());
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UnreadCounter.class);
+        LocalDateTime now = LocalDateTime.now();
+        for (String participant : room.getParticipants()) {
+            LocalDateTime recountedAt = LocalDateTime.now();
+            long count = readStateService.countUnread(room.getId(), participant, lastReadByUser.get(participant), recountedAt);
+            bulk.upsert(byId(participant, room.getId()), new Update()
+                .set("count", count)
+                .set("recountedAt", recountedAt)
+                .set("updatedAt", now)
+                .setOnInsert("userId", participant)
+                .setOnInsert("roomId", room.getId()));
+        }
+        bulk.execute();
+    }
+
+    private Query byId(String userId, String roomId) {
+        return new Query(Criteria.where("_id").is(UnreadCounter.idFor(userId, roomId)));
+    }
+
+    // Matches the counter unless it was recounted after persistedAt; then the upsert fails on the key
+    private Query notRecountedSince(String userId, String roomId, LocalDateTime persistedAt) {
+        return new Query(new Criteria().andOperator(
+            Criteria.where("_id").is(UnreadCounter.idFor(userId, roomId)),
+            new Criteria().orOperator(Criteria.where("recountedAt").lt(persistedAt), Criteria.where("recountedAt").exists(false))));
+    }
+}
@@ -0,0 +1,62 @@
+package com.maitriconnect.chat_service.util;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// Opaque keyset position in a message history: (seq, timestamp, id) encoded as URL-safe base64.
+// seq is null for messages stored before sequences were assigned; cursors without it read as such.
+public class MessageCursor {
+    private final Long seq;
+    private final LocalDateTime timestamp;
+    private final String id;
+
+    public MessageCursor(LocalDateTime timestamp, String id) {
+        this(null, timestamp, id);
+    }
+
+    public MessageCursor(Long seq, LocalDateTime timestamp, String id) {
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static MessageCursor of(ChatMessage message) {
+        return new MessageCursor(message.getSeq(), message.getTimestamp(), message.getId());
+    }
+
+    // Position right after a room sequence number, for clients filling a gap they detected
+    public static MessageCursor afterSeq(long seq) {
+        return new MessageCursor(seq, null, null);
+    }
+
+    public static MessageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", -1);
+            if (parts.length == 2) {
+                return new MessageCursor(LocalDateTime.parse(parts[0]), parts[1]);
+            }
+            if (parts.length == 3) {
+                return new MessageCursor(Long.parseLong(parts[0]), LocalDateTime.parse(parts[1]), parts[2]);
+            }
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    public String encode() {
+        String raw = (seq != null ? seq + "|" : "") + timestamp + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Long getSeq() { return seq; }
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public String getId() { return id; }
+}
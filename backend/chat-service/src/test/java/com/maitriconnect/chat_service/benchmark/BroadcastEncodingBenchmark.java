@@ -0,0 +1,180 @@
+package com.maitriconnect.chat_service.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.maitriconnect.chat_service.cluster.ClusterBroadcaster;
+import com.maitriconnect.chat_service.cluster.ClusterInterestRegistry;
+import com.maitriconnect.chat_service.cluster.EncodedPayload;
+import com.maitriconnect.chat_service.cluster.LoopbackClusterTransport;
+import com.maitriconnect.chat_service.cluster.RoomReplayLog;
+import com.maitriconnect.chat_service.config.ResumeTokenInterceptor;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of fanning one chat message out to a room topic with subscribers per-room subscribers plus the
+// receiver's queue, through a real simple broker and the outbound interceptors. Each delivered message
+// is encoded as a STOMP frame the way StompSubProtocolHandler does, so the numbers cover everything
+// but the socket write. gc.alloc.rate.norm is bytes per fan-out.
+// Both go through the replay log and stamp room frames, as ClusterBroadcaster did before and does now.
+// Run with:
+//   mvn test-compile exec:java -Dexec.classpathScope=test \
+//     -Dexec.mainClass=com.maitriconnect.chat_service.benchmark.BroadcastEncodingBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastEncodingBenchmark {
+
+    private static final String ROOM_TOPIC = "/topic/room.bench";
+    private static final String USER_QUEUE = "/queue/messages-bench";
+
+    @Param({"2", "50"})
+    private int subscribers;
+
+    private final StompEncoder encoder = new StompEncoder();
+    private Blackhole blackhole;
+    private SimpleBrokerMessageHandler broker;
+    private SimpMessagingTemplate template;
+    private ObjectMapper objectMapper;
+    private RoomReplayLog replayLog;
+    private ClusterBroadcaster broadcaster;
+    private ChatMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        outbound.addInterceptor(new ResumeTokenInterceptor());
+        outbound.subscribe(this::writeFrame);
+        broker = new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel, List.of("/topic", "/queue"));
+        broker.start();
+        for (int i = 0; i < subscribers; i++) {
+            connectAndSubscribe("session-" + i, ROOM_TOPIC);
+        }
+        // Stands in for the receiver's resolved /user queue
+        connectAndSubscribe("receiver", USER_QUEUE);
+
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(converter);
+
+        LoopbackClusterTransport transport = new LoopbackClusterTransport("bench", new LoopbackClusterTransport.Hub());
+        replayLog = new RoomReplayLog(256, 32L * 1024 * 1024, new SimpleMeterRegistry());
+        broadcaster = new ClusterBroadcaster(template, transport, new ClusterInterestRegistry(transport, 10000),
+            objectMapper, replayLog);
+
+        message = new ChatMessage("64f000000000000000000001", "64f000000000000000000002",
+            "See you at the station at six, the train leaves at quarter past", "bench", ChatMessage.MessageType.CHAT);
+        message.setId("64f0000000000000000000aa");
+        message.setSeq(42L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.stop();
+    }
+
+    // What ChatController and ClusterBroadcaster did before: each destination converts the entity to
+    // JSON on its own, and room frames carry their sequence and resume-token as native headers
+    @Benchmark
+    public void convertPerDestination() throws JsonProcessingException {
+        byte[] json = objectMapper.writeValueAsBytes(message);
+        replayLog.append("bench", ROOM_TOPIC, json, frame -> template.send(ROOM_TOPIC, nativeStamped(json, frame)));
+        template.convertAndSend(USER_QUEUE, message);
+    }
+
+    // Encoded once, the same bytes go to both destinations and every subscriber (plus the replay log)
+    @Benchmark
+    public void encodeOnce() {
+        EncodedPayload encoded = broadcaster.encode(message);
+        broadcaster.send(ROOM_TOPIC, encoded);
+        broadcaster.send(USER_QUEUE, encoded);
+    }
+
+    private static Message<byte[]> nativeStamped(byte[] json, RoomReplayLog.Frame frame) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setNativeHeader("room-seq", Long.toString(frame.seq()));
+        accessor.setNativeHeader(RoomReplayLog.TOKEN_HEADER, frame.token());
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(json, accessor.getMessageHeaders());
+    }
+
+    // What StompSubProtocolHandler does with each outbound message before the socket write
+    private void writeFrame(Message<?> delivered) {
+        if (SimpMessageHeaderAccessor.getMessageType(delivered.getHeaders()) != SimpMessageType.MESSAGE) {
+            return;
+        }
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(delivered, StompHeaderAccessor.class);
+        if (accessor == null) {
+            accessor = StompHeaderAccessor.wrap(delivered);
+            accessor.updateStompCommandAsServerMessage();
+        }
+        blackhole.consume(encoder.encode(accessor.getMessageHeaders(), (byte[]) delivered.getPayload()));
+    }
+
+    // The broker only delivers to sessions it saw connect
+    private void connectAndSubscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+        broker.handleMessage(subscribe(sessionId, destination));
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(BroadcastEncodingBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
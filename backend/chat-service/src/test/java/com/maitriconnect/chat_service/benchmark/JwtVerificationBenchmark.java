@@ -0,0 +1,94 @@
+package com.maitriconnect.chat_service.benchmark;
+
+import com.maitriconnect.chat_service.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Per-request cost of authenticating a bearer token. Run with:
+//   mvn test-compile exec:java -Dexec.classpathScope=test \
+//     -Dexec.mainClass=com.maitriconnect.chat_service.benchmark.JwtVerificationBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret-benchmark-secret";
+
+    private String token;
+    private JwtUtil uncached;
+    private JwtUtil cached;
+
+    @Setup
+    public void setUp() {
+        token = Jwts.builder()
+            .setSubject("alice")
+            .claim("userId", "64f000000000000000000001")
+            .setIssuedAt(new Date())
+            .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS512)
+            .compact();
+        uncached = jwtUtil(0);
+        cached = jwtUtil(10000);
+    }
+
+    // What the filters did before: new key and parser per call, and three separate verifications
+    @Benchmark
+    public Object legacyThreeParses() {
+        String username = legacyClaims(token).getSubject();
+        String userId = legacyClaims(token).get("userId", String.class);
+        legacyClaims(token);
+        return username + userId;
+    }
+
+    @Benchmark
+    public Object verifyUncached() {
+        return uncached.verify(token);
+    }
+
+    @Benchmark
+    public Object verifyCached() {
+        return cached.verify(token);
+    }
+
+    private static Claims legacyClaims(String token) {
+        return Jwts.parserBuilder()
+            .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes()))
+            .build()
+            .parseClaimsJws(token)
+            .getBody();
+    }
+
+    private static JwtUtil jwtUtil(int cacheMaxEntries) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxEntries", cacheMaxEntries);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtVerificationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,229 @@
+package com.maitriconnect.chat_service.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ClusterBroadcasterTests {
+
+	private LoopbackClusterTransport.Hub hub;
+	private Node nodeA;
+	private Node nodeB;
+
+	@BeforeEach
+	void setUp() {
+		hub = new LoopbackClusterTransport.Hub();
+		nodeA = new Node("a", hub);
+		nodeB = new Node("b", hub);
+	}
+
+	@Test
+	void relaysToNodeWithSubscriber() {
+		nodeB.registry.onSubscribe(subscribe("s1", "sub-0", "/topic/room.1"));
+
+		nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "hi"));
+
+		verify(nodeA.template).send(eq("/topic/room.1"), any());
+		Message<byte[]> relayed = sent(nodeB, "/topic/room.1").get(0);
+		assertEquals("{\"content\":\"hi\"}", new String(relayed.getPayload(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void stampsRoomFramesPerNode() {
+		nodeB.registry.onSubscribe(subscribe("s1", "sub-0", "/topic/room.1"));
+
+		nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "one"));
+		nodeA.broadcaster.convertAndSend("/topic/room.2", Map.of("content", "other room"));
+		nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "two"));
+
+		assertEquals(List.of("1", "2"), seqs(sent(nodeA, "/topic/room.1")));
+		assertEquals(List.of("1"), seqs(sent(nodeA, "/topic/room.2")));
+		// Node B stamps relayed frames itself, since its sessions resume against its own log
+		assertEquals(List.of("1", "2"), seqs(sent(nodeB, "/topic/room.1")));
+	}
+
+	@Test
+	void sharesOneEncodingAcrossDestinations() {
+		nodeB.registry.onSubscribe(subscribe("s1", "sub-0", "/topic/room.1"));
+		EncodedPayload encoded = nodeA.broadcaster.encode(Map.of("content", "hi"));
+
+		nodeA.broadcaster.send("/topic/room.1", encoded);
+		nodeA.broadcaster.sendToUser("bob", "/queue/messages", encoded);
+
+		byte[] room = sent(nodeA, "/topic/room.1").get(0).getPayload();
+		assertSame(room, sent(nodeA, "/user/bob/queue/messages").get(0).getPayload());
+		// Carried along so a compact re-encoding is shared by every subscriber too
+		assertSame(encoded, sent(nodeA, "/topic/room.1").get(0).getHeaders().get(EncodedPayload.HEADER));
+		// The relay hands the receiving node the published bytes as they are
+		assertEquals("{\"content\":\"hi\"}", new String(sent(nodeB, "/topic/room.1").get(0).getPayload(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void doesNotStampTransientFrames() {
+		nodeA.broadcaster.convertAndSendTransient("/topic/room.1", Map.of("type", "TYPING"));
+
+		Message<byte[]> typing = sent(nodeA, "/topic/room.1").get(0);
+		assertNull(typing.getHeaders().get(RoomReplayLog.FRAME_TOKEN_HEADER));
+	}
+
+	@Test
+	void replaysFramesAfterToken() {
+		for (int i = 1; i <= 5; i++) {
+			nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "m" + i));
+		}
+		String token = token(sent(nodeA, "/topic/room.1").get(2));
+
+		List<Long> replayed = new ArrayList<>();
+		int count = replay(nodeA, token, frame -> replayed.add(frame.seq()));
+
+		assertEquals(2, count);
+		assertEquals(List.of(4L, 5L), replayed);
+	}
+
+	@Test
+	void replayStopsWhereTheHoldWasTaken() {
+		for (int i = 1; i <= 3; i++) {
+			nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "m" + i));
+		}
+		RoomReplayLog.ResumeToken token = RoomReplayLog.ResumeToken.parse(token(sent(nodeA, "/topic/room.1").get(0)));
+		RoomReplayLog.Hold hold = nodeA.replayLog.hold("1", token);
+		hold.release();
+
+		// Sent after the subscription was registered, so it reaches the client live
+		nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "m4"));
+
+		List<Long> replayed = new ArrayList<>();
+		nodeA.replayLog.replay(hold, token, frame -> replayed.add(frame.seq()));
+		assertEquals(List.of(2L, 3L), replayed);
+	}
+
+	@Test
+	void refusesTokensTheLogCannotCover() {
+		for (int i = 1; i <= 10; i++) {
+			nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "m" + i));
+		}
+		String first = token(sent(nodeA, "/topic/room.1").get(0));
+		RoomReplayLog.ResumeToken fromNodeB = new RoomReplayLog.ResumeToken("other.1", 9, 0);
+
+		// The log keeps 4 frames, so frames 2..6 after the first token are gone
+		assertEquals(-1, replay(nodeA, first, frame -> { }));
+		assertNull(nodeA.replayLog.hold("1", fromNodeB));
+		assertNull(RoomReplayLog.ResumeToken.parse("not-a-token"));
+	}
+
+	@Test
+	void skipsRelayWithoutRemoteInterest() {
+		long before = hub.getPublishedCount();
+
+		nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "hi"));
+
+		assertEquals(before, hub.getPublishedCount());
+		verify(nodeB.template, never()).send(any(String.class), any());
+	}
+
+	@Test
+	void stopsRelayingAfterDisconnect() {
+		nodeB.registry.onSubscribe(subscribe("s1", "sub-0", "/topic/room.1"));
+		nodeB.registry.onDisconnect(new SessionDisconnectEvent(this, disconnect("s1"), "s1", CloseStatus.NORMAL));
+		long before = hub.getPublishedCount();
+
+		nodeA.broadcaster.convertAndSend("/topic/room.1", Map.of("content", "hi"));
+
+		assertEquals(before, hub.getPublishedCount());
+	}
+
+	@Test
+	void snapshotDropsOnlyKeysTheNodeNoLongerHas() {
+		nodeB.registry.onSubscribe(subscribe("s1", "sub-0", "/topic/room.1"));
+		nodeB.registry.onSubscribe(subscribe("s1", "sub-1", "/topic/room.2"));
+
+		// As if node B's unsubscribe from room.2 had been lost
+		new LoopbackClusterTransport("b", hub).publish(ClusterEnvelope.snapshot("b", List.of("/topic/room.1")));
+
+		assertTrue(nodeA.registry.hasRemoteInterest("/topic/room.1"));
+		assertFalse(nodeA.registry.hasRemoteInterest("/topic/room.2"));
+	}
+
+	private List<Message<byte[]>> sent(Node node, String destination) {
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Message<byte[]>> captor = ArgumentCaptor.forClass(Message.class);
+		verify(node.template, atLeastOnce()).send(eq(destination), captor.capture());
+		return captor.getAllValues();
+	}
+
+	private List<String> seqs(List<Message<byte[]>> messages) {
+		return messages.stream()
+			.map(message -> token(message).split(":")[1])
+			.toList();
+	}
+
+	private static String token(Message<byte[]> message) {
+		return (String) message.getHeaders().get(RoomReplayLog.FRAME_TOKEN_HEADER);
+	}
+
+	// Replays as a resume does: hold while the subscription is registered, then replay up to the hold
+	private static int replay(Node node, String token, Consumer<RoomReplayLog.Frame> sender) {
+		RoomReplayLog.ResumeToken resume = RoomReplayLog.ResumeToken.parse(token);
+		RoomReplayLog.Hold hold = node.replayLog.hold("1", resume);
+		if (hold == null) {
+			return -1;
+		}
+		hold.release();
+		return node.replayLog.replay(hold, resume, sender);
+	}
+
+	private SessionSubscribeEvent subscribe(String sessionId, String subscriptionId, String destination) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		return new SessionSubscribeEvent(this, MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+	}
+
+	private Message<byte[]> disconnect(String sessionId) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+		accessor.setSessionId(sessionId);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	private static final class Node {
+		private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+		private final ClusterInterestRegistry registry;
+		private final RoomReplayLog replayLog = new RoomReplayLog(4, 1 << 20, new SimpleMeterRegistry());
+		private final ClusterBroadcaster broadcaster;
+
+		private Node(String nodeId, LoopbackClusterTransport.Hub hub) {
+			LoopbackClusterTransport transport = new LoopbackClusterTransport(nodeId, hub);
+			registry = new ClusterInterestRegistry(transport, 10000);
+			broadcaster = new ClusterBroadcaster(template, transport, registry, new ObjectMapper(), replayLog);
+		}
+	}
+}
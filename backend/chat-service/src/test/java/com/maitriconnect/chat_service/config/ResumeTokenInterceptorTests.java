@@ -0,0 +1,62 @@
+package com.maitriconnect.chat_service.config;
+
+import com.maitriconnect.chat_service.cluster.RoomReplayLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResumeTokenInterceptorTests {
+
+	private final ResumeTokenInterceptor interceptor = new ResumeTokenInterceptor();
+
+	@Test
+	void writesTheTokenIntoTheStompFrame() {
+		Message<?> out = interceptor.beforeHandle(outbound("c69d7d21.1:7:1700000000000"), null, null);
+
+		// StompSubProtocolHandler sends a message that already has STOMP headers as it is
+		StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(out, StompHeaderAccessor.class);
+		assertNotNull(accessor);
+		assertEquals(StompCommand.MESSAGE, accessor.getCommand());
+		assertEquals("c69d7d21.1:7:1700000000000", accessor.getFirstNativeHeader(RoomReplayLog.TOKEN_HEADER));
+		String frame = new String(new StompEncoder().encode(accessor.getMessageHeaders(), (byte[]) out.getPayload()),
+			StandardCharsets.UTF_8);
+		assertTrue(frame.contains("destination:/topic/room.1\n"));
+		assertTrue(frame.contains("subscription:sub-0\n"));
+		assertTrue(frame.contains(RoomReplayLog.TOKEN_HEADER + ":c69d7d21.1\\c7\\c1700000000000\n"));
+	}
+
+	@Test
+	void leavesFramesWithoutTokenAlone() {
+		Message<byte[]> typing = outbound(null);
+
+		assertSame(typing, interceptor.beforeHandle(typing, null, null));
+	}
+
+	// A room frame as the simple broker addresses it to one subscription
+	private static Message<byte[]> outbound(String token) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId("s1");
+		accessor.setSubscriptionId("sub-0");
+		accessor.setDestination("/topic/room.1");
+		accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+		if (token != null) {
+			accessor.setHeader(RoomReplayLog.FRAME_TOKEN_HEADER, token);
+		}
+		accessor.setLeaveMutable(true);
+		return MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+	}
+}
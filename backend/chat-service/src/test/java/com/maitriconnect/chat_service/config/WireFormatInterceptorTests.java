@@ -0,0 +1,117 @@
+package com.maitriconnect.chat_service.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class WireFormatInterceptorTests {
+
+	private static final String JSON = "{\"content\":\"hi\",\"seq\":7,\"fileAttachments\":[],\"reactions\":{},\"readAt\":null}";
+
+	private final ObjectMapper cborReader = new ObjectMapper(new CBORFactory());
+	private WireFormatInterceptor interceptor;
+
+	@BeforeEach
+	void setUp() {
+		interceptor = new WireFormatInterceptor(new CborMessageConverter(new ObjectMapper()), true, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void sendsCompactCborToNegotiatedSessions() throws Exception {
+		connect("s1", true, CborMessageConverter.APPLICATION_CBOR);
+
+		Message<?> out = interceptor.beforeHandle(outbound("s1"), null, null);
+
+		assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, out.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+		JsonNode body = cborReader.readTree((byte[]) out.getPayload());
+		assertEquals("hi", body.get("content").asText());
+		assertEquals(7, body.get("seq").asInt());
+		// Empty and null fields are left for the client to default
+		assertEquals(2, body.size());
+	}
+
+	@Test
+	void keepsJsonByDefaultAndOverTextTransports() {
+		connect("plain", true, null);
+		connect("sockjs", false, CborMessageConverter.APPLICATION_CBOR);
+
+		Message<byte[]> plain = outbound("plain");
+		Message<byte[]> sockJs = outbound("sockjs");
+
+		assertSame(plain, interceptor.beforeHandle(plain, null, null));
+		assertSame(sockJs, interceptor.beforeHandle(sockJs, null, null));
+	}
+
+	@Test
+	void forgetsSessionOnDisconnect() {
+		connect("s1", true, CborMessageConverter.APPLICATION_CBOR);
+		StompHeaderAccessor disconnect = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+		disconnect.setSessionId("s1");
+		disconnect.setLeaveMutable(true);
+		interceptor.preSend(MessageBuilder.createMessage(new byte[0], disconnect.getMessageHeaders()), null);
+
+		Message<byte[]> message = outbound("s1");
+
+		assertSame(message, interceptor.beforeHandle(message, null, null));
+	}
+
+	@Test
+	void readsCborSendFrames() throws Exception {
+		CborMessageConverter converter = new CborMessageConverter(new ObjectMapper());
+		byte[] cbor = cborReader.writeValueAsBytes(Map.of("content", "hi"));
+		StompHeaderAccessor send = StompHeaderAccessor.create(StompCommand.SEND);
+		send.setContentType(CborMessageConverter.APPLICATION_CBOR);
+		Message<byte[]> message = MessageBuilder.createMessage(cbor, send.getMessageHeaders());
+
+		assertEquals(Map.of("content", "hi"), converter.fromMessage(message, Map.class));
+		// Frames without a content-type are left to the JSON converter
+		Message<byte[]> untyped = MessageBuilder.withPayload(JSON.getBytes(StandardCharsets.UTF_8)).build();
+		assertNull(converter.fromMessage(untyped, Map.class));
+	}
+
+	private void connect(String sessionId, boolean rawWebSocket, MimeType contentType) {
+		Map<String, Object> attributes = new HashMap<>();
+		if (rawWebSocket) {
+			interceptor.beforeHandshake(null, null, null, attributes);
+		}
+		StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+		connect.setSessionId(sessionId);
+		connect.setSessionAttributes(attributes);
+		if (contentType != null) {
+			connect.setContentType(contentType);
+		}
+		connect.setLeaveMutable(true);
+		interceptor.preSend(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()), null);
+	}
+
+	// A MESSAGE as the simple broker addresses it to one subscription
+	private static Message<byte[]> outbound(String sessionId) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId("sub-0");
+		accessor.setDestination("/topic/room.1");
+		accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+		accessor.setLeaveMutable(true);
+		return MessageBuilder.createMessage(JSON.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+	}
+}
@@ -0,0 +1,265 @@
+package com.maitriconnect.chat_service.repository;
+
+import com.maitriconnect.chat_service.config.MongoIndexManager;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.ChatRoom;
+import com.maitriconnect.chat_service.model.FileMetadata;
+import com.maitriconnect.chat_service.model.MessageReaction;
+import com.maitriconnect.chat_service.model.RoomReadState;
+import com.maitriconnect.chat_service.model.UnreadCounter;
+import com.maitriconnect.chat_service.util.MessageCursor;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Runs every repository query against an in-process MongoDB with the declared indexes and checks
+// the winning plan of each one with explain(): a COLLSCAN means a query lost its index.
+// -Dmongo.test.address=host:port points the tests at a running MongoDB; otherwise the binary is
+// downloaded on first use. Without either they are skipped, or fail with -Dindex-tests.required=true.
+@DataMongoTest
+@Import(MongoIndexManager.class)
+class RepositoryIndexUsageTests {
+
+	private static final String ROOM = "room-1";
+	private static final String ALICE = "alice";
+	private static final String BOB = "bob";
+
+	private static TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+	private static String mongoAddress;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private MongoIndexManager indexManager;
+
+	@Autowired
+	private ChatMessageRepository chatMessageRepository;
+
+	@Autowired
+	private ChatRoomRepository chatRoomRepository;
+
+	@Autowired
+	private MessageReactionRepository messageReactionRepository;
+
+	@Autowired
+	private FileMetadataRepository fileMetadataRepository;
+
+	@Autowired
+	private RoomReadStateRepository roomReadStateRepository;
+
+	@Autowired
+	private UnreadCounterRepository unreadCounterRepository;
+
+	// Runs before the Spring context is created, so the context only starts when MongoDB did
+	@BeforeAll
+	static void startMongo() {
+		mongoAddress = System.getProperty("mongo.test.address");
+		if (mongoAddress != null) {
+			return;
+		}
+		String failure = null;
+		try {
+			mongod = Mongod.instance().start(Version.Main.V7_0);
+			mongoAddress = mongod.current().getServerAddress().toString();
+		} catch (RuntimeException e) {
+			failure = e.getMessage();
+		}
+		String reason = "Embedded MongoDB unavailable: " + failure;
+		if (mongod == null && Boolean.getBoolean("index-tests.required")) {
+			fail(reason);
+		}
+		assumeTrue(mongod != null, reason);
+	}
+
+	@AfterAll
+	static void stopMongo() {
+		if (mongod != null) {
+			mongod.close();
+			mongod = null;
+		}
+	}
+
+	@DynamicPropertySource
+	static void mongoProperties(DynamicPropertyRegistry registry) {
+		registry.add("spring.data.mongodb.uri", () -> "mongodb://" + mongoAddress + "/index_usage_test");
+		registry.add("mongo.indexes.require-unique", () -> "true");
+	}
+
+	@BeforeEach
+	void seed() {
+		mongoTemplate.getDb().drop();
+		indexManager.ensureIndexes();
+
+		for (int i = 0; i < 20; i++) {
+			ChatMessage message = new ChatMessage(i % 2 == 0 ? ALICE : BOB, i % 2 == 0 ? BOB : ALICE,
+				"message " + i, i < 10 ? ROOM : "room-2", ChatMessage.MessageType.CHAT);
+			message.setTimestamp(message.getTimestamp().plusSeconds(i));
+			// The oldest messages predate sequences
+			if (i >= 4) {
+				message.setSeq((long) i);
+			}
+			if (i % 4 == 0) {
+				message.setReactionsUpdatedAt(message.getTimestamp());
+			}
+			mongoTemplate.insert(message);
+			mongoTemplate.insert(new MessageReaction(message.getId(), ALICE, ALICE, "+1"));
+			FileMetadata file = new FileMetadata("f" + i, "f" + i, "text/plain", 1L, "g" + i, ALICE, message.getChatRoomId());
+			file.setMessageId(message.getId());
+			mongoTemplate.insert(file);
+		}
+		ChatRoom room = new ChatRoom("a_b", Set.of(ALICE, BOB), ALICE, ChatRoom.ChatRoomType.DIRECT);
+		room.setDirectKey(ChatRoom.directKeyFor(ALICE, BOB));
+		mongoTemplate.insert(room);
+		mongoTemplate.insert(new ChatRoom("group", Set.of(ALICE, BOB, "carol"), ALICE, ChatRoom.ChatRoomType.GROUP));
+		RoomReadState readState = new RoomReadState(ROOM, ALICE);
+		readState.setUpdatedAt(LocalDateTime.now());
+		mongoTemplate.insert(readState);
+		UnreadCounter counter = new UnreadCounter();
+		counter.setId(UnreadCounter.idFor(ALICE, ROOM));
+		counter.setUserId(ALICE);
+		counter.setRoomId(ROOM);
+		mongoTemplate.insert(counter);
+	}
+
+	@Test
+	void chatMessageQueriesUseIndexes() {
+		ChatMessage newest = chatMessageRepository.findFirstByChatRoomIdOrderByTimestampDesc(ROOM);
+		MessageCursor cursor = MessageCursor.of(newest);
+
+		assertIndexed("chat_messages", () -> chatMessageRepository.findRoomPage(ROOM, null, null, 51));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findRoomPage(ROOM, cursor, null, 51));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findRoomPage(ROOM, null, cursor, 51));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findRoomPage(ROOM, null, MessageCursor.afterSeq(5), 51));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findDirectPage(ALICE, BOB, cursor, null, 51));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findByChatRoomIdOrderByTimestampAsc(ROOM));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findFirstByChatRoomIdOrderByTimestampDesc(ROOM));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findDirectMessages(ALICE, BOB));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findBySenderIdOrReceiverIdOrderByTimestampDesc(ALICE, ALICE));
+		assertIndexed("chat_messages", () -> chatMessageRepository.countByReceiverIdAndStatus(BOB, ChatMessage.MessageStatus.SENT));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findRoomsSince(List.of(ROOM, "room-2"), newest.getTimestamp().minusSeconds(5), 501));
+		assertIndexed("chat_messages", () -> chatMessageRepository.findReactionsChangedSince(List.of(ROOM, "room-2"), newest.getTimestamp().minusSeconds(5), 1001));
+		assertIndexed("chat_messages", () -> {
+			try (Stream<ChatMessage> stream = chatMessageRepository.streamSince(newest.getTimestamp().minusSeconds(5))) {
+				stream.forEach(message -> { });
+			}
+		});
+	}
+
+	@Test
+	void chatRoomQueriesUseIndexes() {
+		assertIndexed("chat_rooms", () -> chatRoomRepository.findByParticipantsContaining(ALICE));
+		assertIndexed("chat_rooms", () -> chatRoomRepository.findByParticipantsContainingAndType(ALICE, ChatRoom.ChatRoomType.GROUP));
+		assertIndexed("chat_rooms", () -> chatRoomRepository.findByDirectKey(ChatRoom.directKeyFor(BOB, ALICE)));
+		assertIndexed("chat_rooms", () -> chatRoomRepository.findByParticipantsContainingAndCreatedAtGreaterThanEqual(ALICE, LocalDateTime.now().minusMinutes(1)));
+	}
+
+	@Test
+	void reactionQueriesUseIndexes() {
+		String messageId = chatMessageRepository.findFirstByChatRoomIdOrderByTimestampDesc(ROOM).getId();
+
+		assertIndexed("message_reactions", () -> messageReactionRepository.findByMessageId(messageId));
+		assertIndexed("message_reactions", () -> messageReactionRepository.findByMessageIdAndUserIdAndEmoji(messageId, ALICE, "+1"));
+		assertIndexed("message_reactions", () -> messageReactionRepository.countByMessageIdAndEmoji(messageId, "+1"));
+		assertIndexed("message_reactions", () -> messageReactionRepository.deleteByMessageIdAndUserIdAndEmoji(messageId, ALICE, "+1"));
+	}
+
+	@Test
+	void fileMetadataQueriesUseIndexes() {
+		String messageId = chatMessageRepository.findFirstByChatRoomIdOrderByTimestampDesc(ROOM).getId();
+
+		assertIndexed("file_metadata", () -> fileMetadataRepository.findByMessageId(messageId));
+		assertIndexed("file_metadata", () -> fileMetadataRepository.findByChatRoomId(ROOM));
+		assertIndexed("file_metadata", () -> fileMetadataRepository.findByUploadedBy(ALICE));
+	}
+
+	@Test
+	void readStateQueriesUseIndexes() {
+		assertIndexed("room_read_state", () -> roomReadStateRepository.findByRoomId(ROOM));
+		assertIndexed("room_read_state", () -> roomReadStateRepository.findByUserId(ALICE));
+		assertIndexed("room_read_state", () -> roomReadStateRepository.findByRoomIdInAndUpdatedAtGreaterThanEqual(List.of(ROOM), LocalDateTime.now().minusMinutes(1)));
+		assertIndexed("unread_counters", () -> unreadCounterRepository.findByUserId(ALICE));
+	}
+
+	@Test
+	void reportFindsNothingMissing() {
+		assertTrue(indexManager.report().missing().isEmpty());
+	}
+
+	// Profiles the call, then explains every read it sent to the collection. Writes (the remove half
+	// of a derived delete) cannot be re-explained from the profile, so their recorded plan is checked.
+	private void assertIndexed(String collection, Runnable call) {
+		mongoTemplate.getDb().runCommand(new Document("profile", 0));
+		mongoTemplate.getDb().getCollection("system.profile").drop();
+		mongoTemplate.getDb().runCommand(new Document("profile", 2));
+		try {
+			call.run();
+		} finally {
+			mongoTemplate.getDb().runCommand(new Document("profile", 0));
+		}
+
+		String namespace = mongoTemplate.getDb().getName() + "." + collection;
+		List<Document> operations = mongoTemplate.getDb().getCollection("system.profile")
+			.find(new Document("ns", namespace).append("op", new Document("$in", List.of("query", "command", "remove"))))
+			.into(new ArrayList<>());
+		assertFalse(operations.isEmpty(), "no operation on " + namespace + " was profiled");
+
+		for (Document operation : operations) {
+			String planSummary = operation.getString("planSummary");
+			if ("remove".equals(operation.getString("op"))) {
+				assertFalse(planSummary == null || planSummary.contains("COLLSCAN"), "remove on " + collection + ": " + planSummary);
+				continue;
+			}
+			Document command = new Document(operation.get("command", Document.class));
+			command.keySet().removeIf(key -> key.startsWith("$") || key.equals("lsid"));
+			Document explain = mongoTemplate.getDb().runCommand(
+				new Document("explain", command).append("verbosity", "queryPlanner"));
+			List<Document> winningPlans = new ArrayList<>();
+			collectWinningPlans(explain, winningPlans);
+			if (winningPlans.isEmpty()) {
+				fail("explain returned no winning plan for " + command.toJson());
+			}
+			for (Document plan : winningPlans) {
+				assertFalse(plan.toJson().contains("\"COLLSCAN\""), "collection scan for " + command.toJson() + ": " + plan.toJson());
+			}
+		}
+	}
+
+	private static void collectWinningPlans(Object node, List<Document> plans) {
+		if (node instanceof Document document) {
+			for (Map.Entry<String, Object> entry : document.entrySet()) {
+				if ("winningPlan".equals(entry.getKey()) && entry.getValue() instanceof Document plan) {
+					plans.add(plan);
+				} else {
+					collectWinningPlans(entry.getValue(), plans);
+				}
+			}
+		} else if (node instanceof List<?> list) {
+			list.forEach(item -> collectWinningPlans(item, plans));
+		}
+	}
+}
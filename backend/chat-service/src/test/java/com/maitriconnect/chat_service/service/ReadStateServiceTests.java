@@ -0,0 +1,70 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.dto.ReceiptResult;
+import com.maitriconnect.chat_service.model.RoomReadState;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReadStateServiceTests {
+
+	private static final LocalDateTime UP_TO = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+	private MongoTemplate mongoTemplate;
+	private ReadStateService service;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate = mock(MongoTemplate.class);
+		service = new ReadStateService();
+		ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+	}
+
+	@Test
+	void movesWatermarkToTheNamedMessage() {
+		when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(RoomReadState.class)))
+			.thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+		ReceiptResult result = service.markRead("room-1", "bob", UP_TO);
+
+		assertEquals(1, result.getModifiedCount());
+		assertEquals(UP_TO, result.getHighWaterMark());
+		verify(mongoTemplate, never()).upsert(any(Query.class), any(Update.class), eq(RoomReadState.class));
+	}
+
+	@Test
+	void repeatedReceiptChangesNothing() {
+		// The watermark is already at UP_TO: the guarded update matches nothing and the upsert only finds the document
+		when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(RoomReadState.class)))
+			.thenReturn(UpdateResult.acknowledged(0, 0L, null));
+		when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(RoomReadState.class)))
+			.thenReturn(UpdateResult.acknowledged(1, 0L, null));
+
+		assertEquals(0, service.markRead("room-1", "bob", UP_TO).getModifiedCount());
+	}
+
+	@Test
+	void firstReceiptCreatesReadState() {
+		when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(RoomReadState.class)))
+			.thenReturn(UpdateResult.acknowledged(0, 0L, null));
+		when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(RoomReadState.class)))
+			.thenReturn(UpdateResult.acknowledged(0, 0L, new BsonString("room-1:bob")));
+
+		assertEquals(1, service.markDelivered("room-1", "bob", UP_TO).getModifiedCount());
+	}
+}
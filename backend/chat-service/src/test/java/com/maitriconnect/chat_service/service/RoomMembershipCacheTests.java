@@ -0,0 +1,74 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.ChatRoom;
+import com.maitriconnect.chat_service.repository.ChatRoomRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoomMembershipCacheTests {
+
+	private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+	private ChatRoomRepository chatRoomRepository;
+
+	@BeforeEach
+	void setUp() {
+		chatRoomRepository = mock(ChatRoomRepository.class);
+		ChatRoom room = new ChatRoom("alice_bob", new HashSet<>(Set.of("alice", "bob")), "alice", ChatRoom.ChatRoomType.DIRECT);
+		room.setId("room-1");
+		when(chatRoomRepository.findById("room-1")).thenAnswer(invocation -> Optional.of(new ChatRoom(room)));
+	}
+
+	@Test
+	void handsOutCopiesAndSwapsInLastMessageUpdates() {
+		RoomMembershipCache cache = newCache(60000, "loopback");
+		ChatRoom before = cache.getRoom("room-1");
+
+		before.setLastMessage("changed by a caller");
+		cache.recordLastMessage(message("hi", T0));
+
+		// The copy a reader holds does not change under it, and callers cannot change the cache
+		assertEquals("changed by a caller", before.getLastMessage());
+		ChatRoom after = cache.getRoom("room-1");
+		assertEquals("hi", after.getLastMessage());
+		assertEquals(T0, after.getLastMessageTime());
+		verify(chatRoomRepository, times(1)).findById("room-1");
+	}
+
+	@Test
+	void reloadsRoomsWhenClustered() {
+		RoomMembershipCache cache = newCache(0, "mongo");
+		cache.getRoom("room-1");
+		cache.recordLastMessage(message("hi", T0));
+
+		// Other nodes update the room too, so the expired snapshot comes from the database again
+		assertNull(cache.getRoom("room-1").getLastMessage());
+		verify(chatRoomRepository, times(2)).findById("room-1");
+	}
+
+	private RoomMembershipCache newCache(long roomTtlMs, String clusterTransport) {
+		RoomMembershipCache cache = new RoomMembershipCache(100, 100, 60000, roomTtlMs, clusterTransport);
+		ReflectionTestUtils.setField(cache, "chatRoomRepository", chatRoomRepository);
+		return cache;
+	}
+
+	private static ChatMessage message(String content, LocalDateTime timestamp) {
+		ChatMessage message = new ChatMessage("alice", "bob", content, "room-1", ChatMessage.MessageType.CHAT);
+		message.setTimestamp(timestamp);
+		return message;
+	}
+}
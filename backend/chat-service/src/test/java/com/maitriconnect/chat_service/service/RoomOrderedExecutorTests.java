@@ -0,0 +1,95 @@
+package com.maitriconnect.chat_service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.MessageDeliveryException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomOrderedExecutorTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	// Stands in for the client inbound channel's executor
+	private final ExecutorService channelExecutor = Executors.newFixedThreadPool(4);
+	private RoomOrderedExecutor executor;
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdown();
+		channelExecutor.shutdownNow();
+	}
+
+	@Test
+	void runsARoomsTasksInSubmissionOrder() throws InterruptedException {
+		executor = new RoomOrderedExecutor(channelExecutor, 1000, 500, meterRegistry);
+		List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(500);
+
+		for (int i = 0; i < 500; i++) {
+			int index = i;
+			executor.execute("room-1", () -> {
+				seen.add(index);
+				done.countDown();
+			});
+		}
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 500; i++) {
+			assertEquals(i, seen.get(i));
+		}
+		executor.shutdown();
+		assertEquals(0.0, meterRegistry.get("chat.lanes.rooms").gauge().value());
+	}
+
+	@Test
+	void slowRoomDoesNotHoldUpOtherRooms() throws InterruptedException {
+		executor = new RoomOrderedExecutor(channelExecutor, 1000, 500, meterRegistry);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch othersRan = new CountDownLatch(3);
+
+		executor.execute("room-a", () -> await(release));
+		for (String room : List.of("room-b", "room-c", "room-d")) {
+			executor.execute(room, othersRan::countDown);
+		}
+
+		assertTrue(othersRan.await(5, TimeUnit.SECONDS));
+		release.countDown();
+	}
+
+	@Test
+	void rejectsWhenARoomsQueueIsFull() throws InterruptedException {
+		executor = new RoomOrderedExecutor(channelExecutor, 1, 500, meterRegistry);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute("room-1", () -> {
+			started.countDown();
+			await(release);
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		// One task runs, one waits in the queue, the third is turned away without blocking the caller
+		executor.execute("room-1", () -> { });
+		assertThrows(MessageDeliveryException.class, () -> executor.execute("room-1", () -> { }));
+		assertEquals(1.0, meterRegistry.get("chat.lanes.rejected").counter().count());
+		release.countDown();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
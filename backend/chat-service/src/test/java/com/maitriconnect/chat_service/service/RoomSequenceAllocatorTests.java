@@ -0,0 +1,109 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.model.RoomSequence;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoomSequenceAllocatorTests {
+
+	private final Map<String, Long> counters = new HashMap<>();
+	private MongoTemplate mongoTemplate;
+	private RoomSequenceAllocator allocator;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate = mock(MongoTemplate.class);
+		// Behaves like the upserting $inc on room_sequences
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RoomSequence.class)))
+			.thenAnswer(invocation -> {
+				Query query = invocation.getArgument(0);
+				Update update = invocation.getArgument(1);
+				String roomId = query.getQueryObject().getString("_id");
+				long inc = ((Number) update.getUpdateObject().get("$inc", Document.class).get("leased")).longValue();
+				RoomSequence counter = new RoomSequence();
+				counter.setId(roomId);
+				counter.setLeased(counters.merge(roomId, inc, Long::sum));
+				return counter;
+			});
+		when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(RoomSequence.class)))
+			.thenReturn(UpdateResult.acknowledged(1, 1L, null));
+		allocator = newAllocator();
+	}
+
+	@Test
+	void countsUpPerRoomWithinLeasedBlocks() {
+		for (long expected = 1; expected <= 7; expected++) {
+			assertEquals(expected, allocator.next("room-1"));
+		}
+		assertEquals(1, allocator.next("room-2"));
+
+		// Blocks of 3: room-1 needed three leases for seven sequences, room-2 one
+		verify(mongoTemplate, times(4)).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RoomSequence.class));
+	}
+
+	@Test
+	void restartContinuesAfterEveryLeasedSequence() {
+		allocator.next("room-1");
+		allocator.next("room-1");
+
+		// A crash skips the rest of the block rather than reusing any of it
+		assertEquals(4, newAllocator().next("room-1"));
+	}
+
+	@Test
+	void shutdownHandsBackTheUnusedRestOfABlock() {
+		allocator.next("room-1");
+		allocator.next("room-1");
+
+		allocator.releaseUnused();
+
+		ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+		verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(RoomSequence.class));
+		assertEquals(2L, update.getValue().getUpdateObject().get("$set", Document.class).get("leased"));
+	}
+
+	@Test
+	void clusteredNodesLeaseOneSequenceAtATime() {
+		RoomSequenceAllocator node1 = clustered();
+		RoomSequenceAllocator node2 = clustered();
+
+		// Sequences follow the order the nodes accepted the messages in
+		assertEquals(1, node1.next("room-1"));
+		assertEquals(2, node2.next("room-1"));
+		assertEquals(3, node1.next("room-1"));
+	}
+
+	private RoomSequenceAllocator clustered() {
+		RoomSequenceAllocator created = newAllocator();
+		ReflectionTestUtils.setField(created, "clusterTransport", "mongo");
+		created.limitBlockSizeWhenClustered();
+		return created;
+	}
+
+	private RoomSequenceAllocator newAllocator() {
+		RoomSequenceAllocator created = new RoomSequenceAllocator();
+		ReflectionTestUtils.setField(created, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(created, "blockSize", 3);
+		ReflectionTestUtils.setField(created, "clusterTransport", "loopback");
+		return created;
+	}
+}
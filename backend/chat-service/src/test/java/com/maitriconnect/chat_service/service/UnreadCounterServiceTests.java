@@ -0,0 +1,123 @@
+package com.maitriconnect.chat_service.service;
+
+import com.maitriconnect.chat_service.event.MessagesPersistedEvent;
+import com.maitriconnect.chat_service.model.ChatMessage;
+import com.maitriconnect.chat_service.model.ChatRoom;
+import com.maitriconnect.chat_service.model.RoomReadState;
+import com.maitriconnect.chat_service.model.UnreadCounter;
+import com.maitriconnect.chat_service.repository.RoomReadStateRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UnreadCounterServiceTests {
+
+	private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+	private MongoTemplate mongoTemplate;
+	private BulkOperations bulk;
+	private RoomReadStateRepository roomReadStateRepository;
+	private ReadStateService readStateService;
+	private UnreadCounterService service;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate = mock(MongoTemplate.class);
+		bulk = mock(BulkOperations.class);
+		when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UnreadCounter.class)).thenReturn(bulk);
+
+		ChatRoom room = new ChatRoom();
+		room.setId("room-1");
+		room.setParticipants(Set.of("alice", "bob", "carol"));
+		RoomMembershipCache roomMembershipCache = mock(RoomMembershipCache.class);
+		when(roomMembershipCache.getRooms(anyCollection())).thenReturn(List.of(room));
+		roomReadStateRepository = mock(RoomReadStateRepository.class);
+		readStateService = mock(ReadStateService.class);
+
+		service = new UnreadCounterService();
+		ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(service, "roomMembershipCache", roomMembershipCache);
+		ReflectionTestUtils.setField(service, "roomReadStateRepository", roomReadStateRepository);
+		ReflectionTestUtils.setField(service, "readStateService", readStateService);
+	}
+
+	@Test
+	void skipsMessagesAlreadyReadBeforeTheyWerePersisted() {
+		// bob read up to the first message while the batch was still queued; carol has read nothing
+		RoomReadState bob = new RoomReadState("room-1", "bob");
+		bob.setLastReadAt(T0.plusSeconds(1));
+		when(roomReadStateRepository.findByRoomIdIn(anyCollection())).thenReturn(List.of(bob));
+
+		service.onMessagesPersisted(new MessagesPersistedEvent(List.of(message(T0.plusSeconds(1)), message(T0.plusSeconds(2))), T0.plusSeconds(3)));
+
+		assertEquals(Map.of("room-1:bob", 1L, "room-1:carol", 2L), increments());
+	}
+
+	@Test
+	void incrementSkipsCountersRecountedAfterThePersist() {
+		when(roomReadStateRepository.findByRoomIdIn(anyCollection())).thenReturn(List.of());
+
+		service.onMessagesPersisted(new MessagesPersistedEvent(List.of(message(T0)), T0));
+
+		ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+		verify(bulk, atLeastOnce()).upsert(queries.capture(), any(Update.class));
+		assertTrue(queries.getValue().getQueryObject().toString().contains("recountedAt"));
+		verify(bulk).execute();
+	}
+
+	@Test
+	void resetCountsOnlyMessagesPersistedByItsRecountedAt() {
+		when(readStateService.countUnread(eq("room-1"), eq("bob"), eq(T0), any(LocalDateTime.class))).thenReturn(3L);
+
+		service.reset("bob", "room-1", T0);
+
+		// Batches persisted after the cutoff are left to the increment, which checks the same recountedAt
+		ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+		verify(readStateService).countUnread(eq("room-1"), eq("bob"), eq(T0), cutoff.capture());
+		ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+		verify(mongoTemplate).upsert(any(Query.class), update.capture(), eq(UnreadCounter.class));
+		Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+		assertEquals(cutoff.getValue(), set.get("recountedAt"));
+		assertEquals(3L, set.get("count"));
+	}
+
+	private Map<String, Object> increments() {
+		ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+		verify(bulk, atLeastOnce()).upsert(any(Query.class), updates.capture());
+		Map<String, Object> increments = new HashMap<>();
+		for (Update captured : updates.getAllValues()) {
+			Document update = captured.getUpdateObject();
+			Document setOnInsert = update.get("$setOnInsert", Document.class);
+			increments.put(setOnInsert.get("roomId") + ":" + setOnInsert.get("userId"), update.get("$inc", Document.class).get("count"));
+		}
+		return increments;
+	}
+
+	private static ChatMessage message(LocalDateTime timestamp) {
+		ChatMessage message = new ChatMessage("alice", null, "hi", "room-1", ChatMessage.MessageType.CHAT);
+		message.setTimestamp(timestamp);
+		return message;
+	}
+}
@@ -6,6 +6,17 @@ import { fileService } from "../services/fileService";
 
 const API_BASE = "http://localhost:8080"; // REST API through gateway
 const WS_BASE = "http://localhost:8082"; // WebSocket direct to chat-service
+// How long a gap in a room's sequence may stay open before it is fetched; frames can overtake each other.
+// Some gaps never close (a node that crashed skips the rest of its sequence block), so each is fetched once
+const GAP_FILL_DELAY_MS = 1500;
+
+// Chat messages carry a per-room seq; insert by it so a frame that overtook another still shows in order
+const insertBySeq = (list, msg) => {
+  if (msg.seq == null) return [...list, msg];
+  let index = list.length;
+  while (index > 0 && list[index - 1].seq != null && list[index - 1].seq > msg.seq) index--;
+  return [...list.slice(0, index), msg, ...list.slice(index)];
+};
 
 export function useChatLogic({ user, token }) {
   const [allUsers, setAllUsers] = useState([]);
@@ -22,6 +33,19 @@ export function useChatLogic({ user, token }) {
   const stompClientRef = useRef(null);
   const typingTimeoutRef = useRef(null);
   const roomSubscriptionRef = useRef(null);
+  const syncTokenRef = useRef(null);
+  const syncChangesRef = useRef(null);
+  // Last resume-token seen per room, sent when re-subscribing so the server replays only missed frames
+  const resumeTokensRef = useRef({});
+  // Highest chat message seq seen per room, pending gap fills, and the seq each room was last filled up to
+  const lastSeqRef = useRef({});
+  const gapFillsRef = useRef({});
+  const filledSeqRef = useRef({});
+  const currentRoomIdRef = useRef(null);
+
+  useEffect(() => {
+    currentRoomIdRef.current = currentRoomId;
+  }, [currentRoomId]);
 
   // ---- Load all users once authenticated ----
   useEffect(() => {
@@ -49,8 +73,72 @@ export function useChatLogic({ user, token }) {
 
     console.log('🔌 Initializing STOMP connection to chat-service...');
 
+    const authHeaders = { Authorization: `Bearer ${token}` };
+
+    // On every (re)connect, fetch only what changed since the last sync instead of reloading
+    // history. The first sync just hands out a token.
+    const syncChanges = async () => {
+      try {
+        const hadToken = syncTokenRef.current !== null;
+        const res = await axios.get(`${API_BASE}/api/chat/users/${user.userId}/sync`, {
+          params: hadToken ? { since: syncTokenRef.current } : {},
+          headers: authHeaders,
+        });
+        const delta = res.data;
+        syncTokenRef.current = delta.token;
+        const roomId = currentRoomIdRef.current;
+        if (!roomId) return;
+
+        if (delta.resetRequired) {
+          if (!hadToken) return;
+          // Too much changed (or the token expired): reload the open chat's newest page
+          const page = await axios.get(`${API_BASE}/api/chat/rooms/${roomId}/messages`, {
+            headers: authHeaders,
+          });
+          setMessages([...page.data.messages].reverse());
+          return;
+        }
+
+        const newMessages = (delta.messages || []).filter((m) => m.chatRoomId === roomId);
+        const counts = {};
+        (delta.reactions || [])
+          .filter((r) => r.chatRoomId === roomId)
+          .forEach((r) => r.updates.forEach((u) => { counts[u.messageId] = u.reactions || {}; }));
+        const receipts = (delta.receipts || []).filter((r) => r.roomId === roomId && r.userId !== user.userId);
+
+        setMessages((prev) => {
+          const known = new Set(prev.map((m) => m.id));
+          const merged = [...prev, ...newMessages.filter((m) => !known.has(m.id))];
+          return merged.map((m) => {
+            let updated = counts[m.id] ? { ...m, reactions: counts[m.id] } : m;
+            if (m.senderId === user.userId) {
+              const sentAt = new Date(m.timestamp);
+              receipts.forEach((r) => {
+                if (r.lastReadAt && new Date(r.lastReadAt) >= sentAt) {
+                  updated = { ...updated, status: "READ" };
+                } else if (r.lastDeliveredAt && new Date(r.lastDeliveredAt) >= sentAt && updated.status === "SENT") {
+                  updated = { ...updated, status: "DELIVERED" };
+                }
+              });
+            }
+            return updated;
+          });
+        });
+
+        if (delta.hasMore) {
+          syncChanges();
+        }
+      } catch (err) {
+        console.error('❌ Sync failed:', err);
+      }
+    };
+
+    syncChangesRef.current = syncChanges;
+
     const client = new Client({
       webSocketFactory: () => new SockJS(`${WS_BASE}/ws`), // Direct to chat-service
+      // The chat-service authenticates the session once, from the CONNECT frame
+      connectHeaders: authHeaders,
       reconnectDelay: 5000,
       heartbeatIncoming: 4000,
       heartbeatOutgoing: 4000,
@@ -60,6 +148,7 @@ export function useChatLogic({ user, token }) {
       onConnect: () => {
         console.log('✅ STOMP Connected successfully');
         setIsConnected(true);
+        syncChanges();
       },
       onDisconnect: () => {
         console.log('❌ STOMP Disconnected');
@@ -84,6 +173,35 @@ export function useChatLogic({ user, token }) {
     };
   }, [token, user]);
 
+  // Fetch whatever is still missing after afterSeq once in-flight frames had a chance to arrive.
+  // Seqs the server does not return then are skipped for good; they are not fetched again
+  const scheduleGapFill = (roomId, afterSeq) => {
+    if (gapFillsRef.current[roomId]) return;
+    if (filledSeqRef.current[roomId] != null && afterSeq < filledSeqRef.current[roomId]) return;
+    gapFillsRef.current[roomId] = setTimeout(async () => {
+      delete gapFillsRef.current[roomId];
+      try {
+        const res = await axios.get(`${API_BASE}/api/chat/rooms/${roomId}/messages`, {
+          params: { afterSeq },
+          headers: { Authorization: `Bearer ${token}` },
+        });
+        const missing = [...res.data.messages].reverse();
+        const filledUpTo = missing.length > 0 ? missing[missing.length - 1].seq : lastSeqRef.current[roomId];
+        filledSeqRef.current[roomId] = Math.max(filledSeqRef.current[roomId] ?? 0, filledUpTo ?? 0);
+        if (currentRoomIdRef.current !== roomId || missing.length === 0) return;
+        setMessages((prev) => {
+          const known = new Set(prev.map((m) => m.id));
+          return missing.filter((m) => !known.has(m.id)).reduce(insertBySeq, prev);
+        });
+        if (res.data.hasMore) {
+          scheduleGapFill(roomId, missing[missing.length - 1].seq);
+        }
+      } catch (err) {
+        console.error('❌ Gap fill failed:', err);
+      }
+    }, GAP_FILL_DELAY_MS);
+  };
+
   // ---- Subscribe to current room when connection OR room changes ----
   useEffect(() => {
     // Wait for both connection and room to be ready
@@ -103,29 +221,46 @@ export function useChatLogic({ user, token }) {
 
     // Subscribe to new room
     try {
+      const resumeToken = resumeTokensRef.current[currentRoomId];
       const subscription = stompClientRef.current.subscribe(
         `/topic/room.${currentRoomId}`,
         (message) => {
           const msg = JSON.parse(message.body);
           console.log('📨 Received WebSocket message:', msg);
 
-          // Handle typing indicators
-          if (msg.type === "TYPING") {
-            setTypingUser(msg.senderId);
+          // Tokens are "logId:seq:millis"; keep the newest one of the current log
+          const token = message.headers['resume-token'];
+          if (token) {
+            const previous = resumeTokensRef.current[currentRoomId];
+            const [logId, seq] = token.split(':');
+            const [previousLogId, previousSeq] = previous ? previous.split(':') : [];
+            if (logId !== previousLogId || Number(seq) > Number(previousSeq)) {
+              resumeTokensRef.current[currentRoomId] = token;
+            }
+          }
+
+          // The server could not replay everything missed while disconnected
+          if (msg.type === "RESYNC") {
+            if (syncChangesRef.current) syncChangesRef.current();
             return;
           }
-          if (msg.type === "STOP_TYPING") {
-            setTypingUser(null);
+
+          // Handle typing indicators: the server sends a snapshot of everyone currently typing
+          if (msg.type === "TYPING") {
+            const others = (msg.typingUserIds || []).filter((id) => id !== user.userId);
+            setTypingUser(others.length > 0 ? others[0] : null);
             return;
           }
 
-          // Handle reactions
+          // Handle reactions: one frame carries the latest counts for every message changed in the window
           if (msg.type === "REACTION") {
+            const counts = {};
+            (msg.updates || []).forEach((u) => {
+              counts[u.messageId] = u.reactions || {};
+            });
             setMessages((prev) =>
               prev.map((m) =>
-                m.id === msg.messageId
-                  ? { ...m, reactions: msg.reactions || {} }
-                  : m
+                counts[m.id] ? { ...m, reactions: counts[m.id] } : m
               )
             );
             return;
@@ -153,6 +288,17 @@ export function useChatLogic({ user, token }) {
           if (msg.type === "CHAT" || msg.type === "FILE") {
             console.log('💬 Adding new message to state');
 
+            // A jump in the room's sequence means messages were missed, are still in flight, or never got stored
+            if (msg.seq != null) {
+              const lastSeq = lastSeqRef.current[msg.chatRoomId];
+              if (lastSeq != null && msg.seq > lastSeq + 1) {
+                scheduleGapFill(msg.chatRoomId, lastSeq);
+              }
+              if (lastSeq == null || msg.seq > lastSeq) {
+                lastSeqRef.current[msg.chatRoomId] = msg.seq;
+              }
+            }
+
             // Fetch file metadata if message has file attachments
             if (msg.fileAttachments && msg.fileAttachments.length > 0) {
               msg.fileAttachments.forEach(async (fileId) => {
@@ -179,7 +325,7 @@ export function useChatLogic({ user, token }) {
                 console.log('⚠️ Message already exists, skipping');
                 return prev;
               }
-              return [...prev, msg];
+              return insertBySeq(prev, msg);
             });
           }
 
@@ -187,7 +333,8 @@ export function useChatLogic({ user, token }) {
           if (msg.type === "JOIN" || msg.type === "LEAVE") {
             setMessages((prev) => [...prev, msg]);
           }
-        }
+        },
+        resumeToken ? { resume: resumeToken } : {}
       );
 
       roomSubscriptionRef.current = subscription;
@@ -222,15 +369,19 @@ export function useChatLogic({ user, token }) {
     console.log('📦 Got room:', room.id);
     setCurrentRoomId(room.id);
 
-    // 2. Load historical messages once
+    // 2. Load the newest page of history (returned newest first)
     const msgsRes = await axios.get(
       `${API_BASE}/api/chat/messages/direct?user1=${user.userId}&user2=${chatUser.id}`,
       { headers: { Authorization: `Bearer ${token}` } }
     );
-    console.log('📜 Loaded', msgsRes.data.length, 'historical messages');
+    console.log('📜 Loaded', msgsRes.data.messages.length, 'historical messages');
 
-    const historicalMessages = msgsRes.data;
+    const historicalMessages = [...msgsRes.data.messages].reverse();
     setMessages(historicalMessages);
+    const seqs = historicalMessages.filter((m) => m.chatRoomId === room.id && m.seq != null).map((m) => m.seq);
+    lastSeqRef.current[room.id] = seqs.length > 0 ? Math.max(...seqs) : undefined;
+    // Holes inside the loaded page are skipped seqs, not messages to fetch
+    filledSeqRef.current[room.id] = lastSeqRef.current[room.id];
 
     // Fetch metadata for any files in historical messages
     historicalMessages.forEach(msg => {